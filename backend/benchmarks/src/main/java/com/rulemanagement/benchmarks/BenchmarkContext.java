@@ -0,0 +1,48 @@
+package com.rulemanagement.benchmarks;
+
+import com.rulemanagement.RuleManagementApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Starts the backend's services without the web server, so benchmarks run against the beans as
+ * configured in production.
+ */
+final class BenchmarkContext {
+
+    private BenchmarkContext() {
+    }
+
+    static ConfigurableApplicationContext start(String... properties) {
+        return start(WebApplicationType.NONE, properties);
+    }
+
+    /**
+     * Starts the backend with its web server on a free port, read back from {@code local.server.port}.
+     */
+    static ConfigurableApplicationContext startServer(String... properties) {
+        return start(WebApplicationType.SERVLET, properties);
+    }
+
+    private static ConfigurableApplicationContext start(WebApplicationType type, String... properties) {
+        // Passed as arguments, since application.properties takes precedence over default properties
+        List<String> args = new ArrayList<>(List.of(
+            "--spring.main.banner-mode=off",
+            "--logging.level.root=WARN",
+            "--logging.level.com.rulemanagement=WARN",
+            "--logging.level.org.springframework.web=WARN",
+            "--rule-management.workspaces.persist=false",
+            "--server.port=0"));
+        for (String property : properties) {
+            args.add("--" + property);
+        }
+        return new SpringApplicationBuilder(RuleManagementApplication.class)
+            .web(type)
+            .logStartupInfo(false)
+            .run(args.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,81 @@
+package com.rulemanagement.benchmarks;
+
+import com.rulemanagement.model.GitRepository;
+import com.rulemanagement.model.Rule;
+import com.rulemanagement.service.RuleService;
+import com.rulemanagement.service.RuleTemplate;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rule reads and edits through {@link RuleService} on one workspace from many threads at once: a
+ * read-mostly mix of lookups and updates, and creates paired with deletes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CrudBenchmark {
+
+    @Param({"10000", "100000"})
+    public int rules;
+
+    private ConfigurableApplicationContext context;
+    private RuleService ruleService;
+    private String workspaceId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        context = BenchmarkContext.start();
+        ruleService = context.getBean(RuleService.class);
+
+        GitRepository gitRepo = new GitRepository();
+        gitRepo.setUrl("file:///benchmarks/crud.git");
+        gitRepo.setBranch("main");
+        gitRepo.setFilePath("rules/table.xlsx");
+        RuleTemplate template = new RuleTemplate(gitRepo.getFilePath(), DecisionTables.ruleTable(rules),
+            "bench", "crud-" + rules);
+        ruleService.loadWorkspace(gitRepo, template, rule -> { });
+        workspaceId = ruleService.workspaceIdFor(gitRepo);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @Group("readMostly")
+    @GroupThreads(6)
+    public Rule read() {
+        return ruleService.getRuleById(workspaceId, randomId());
+    }
+
+    @Benchmark
+    @Group("readMostly")
+    @GroupThreads(2)
+    public Rule update() {
+        long id = randomId();
+        Rule rule = new Rule(id, "Updated " + id, "Edited by the benchmark");
+        rule.getConditions().put("Age", "42");
+        return ruleService.updateRule(workspaceId, id, rule, null);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean createAndDelete() {
+        Rule created = ruleService.createRule(workspaceId, new Rule(null, "Created", null));
+        return ruleService.deleteRule(workspaceId, created.getId(), null);
+    }
+
+    private long randomId() {
+        // Parsed rules are numbered from 1 and every row of the generated table is a rule
+        return 1 + ThreadLocalRandom.current().nextInt(rules);
+    }
+}
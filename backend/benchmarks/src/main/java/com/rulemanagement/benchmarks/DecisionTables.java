@@ -0,0 +1,125 @@
+package com.rulemanagement.benchmarks;
+
+import com.rulemanagement.model.Rule;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generated workbooks of a given size, so every run measures the same input.
+ */
+final class DecisionTables {
+
+    private DecisionTables() {
+    }
+
+    /**
+     * A decision table in the layout the backend reads and writes: the CONDITION row in the first
+     * column, the column names below it and the data three rows down.
+     */
+    static byte[] ruleTable(int rows) throws IOException {
+        try (SXSSFWorkbook workbook = new SXSSFWorkbook(100)) {
+            Sheet sheet = workbook.createSheet("Rules");
+            header(sheet);
+            Row row = sheet.createRow(4);
+            String[] keywords = {"CONDITION", "CONDITION", "CONDITION", "ACTION"};
+            for (int i = 0; i < keywords.length; i++) {
+                row.createCell(i).setCellValue(keywords[i]);
+            }
+            row = sheet.createRow(5);
+            String[] names = {"$a : Applicant", "Age", "Country", "Discount"};
+            for (int i = 0; i < names.length; i++) {
+                row.createCell(i).setCellValue(names[i]);
+            }
+            row = sheet.createRow(6);
+            String[] code = {"", "age > $param", "country == \"$param\"", "$a.setDiscount($param);"};
+            for (int i = 0; i < code.length; i++) {
+                row.createCell(i).setCellValue(code[i]);
+            }
+            for (int i = 0; i < rows; i++) {
+                row = sheet.createRow(7 + i);
+                row.createCell(0).setCellValue("Rule " + i);
+                row.createCell(1).setCellValue(18 + i % 60);
+                row.createCell(2).setCellValue(i % 3 == 0 ? "US" : "DE");
+                row.createCell(3).setCellValue((i % 20) / 100.0);
+            }
+            return bytes(workbook);
+        }
+    }
+
+    /**
+     * A table Drools compiles without errors, for validation.
+     */
+    static byte[] validTable(int rows) throws IOException {
+        try (SXSSFWorkbook workbook = new SXSSFWorkbook(100)) {
+            Sheet sheet = workbook.createSheet("Rules");
+            header(sheet);
+            Row row = sheet.createRow(3);
+            row.createCell(1).setCellValue("RuleTable Discounts");
+            row = sheet.createRow(4);
+            String[] keywords = {"NAME", "CONDITION", "CONDITION", "ACTION"};
+            for (int i = 0; i < keywords.length; i++) {
+                row.createCell(i + 1).setCellValue(keywords[i]);
+            }
+            row = sheet.createRow(5);
+            row.createCell(2).setCellValue("$a : Applicant");
+            row.createCell(3);
+            sheet.addMergedRegion(new CellRangeAddress(5, 5, 2, 3));
+            row = sheet.createRow(6);
+            String[] code = {"", "age > $param", "country == \"$param\"", "$a.setDiscount($param);"};
+            for (int i = 0; i < code.length; i++) {
+                row.createCell(i + 1).setCellValue(code[i]);
+            }
+            row = sheet.createRow(7);
+            String[] labels = {"Name", "Age", "Country", "Discount"};
+            for (int i = 0; i < labels.length; i++) {
+                row.createCell(i + 1).setCellValue(labels[i]);
+            }
+            for (int i = 0; i < rows; i++) {
+                row = sheet.createRow(8 + i);
+                row.createCell(1).setCellValue("R" + i);
+                row.createCell(2).setCellValue(18 + i % 60);
+                row.createCell(3).setCellValue(i % 3 == 0 ? "US" : "DE");
+                row.createCell(4).setCellValue((i % 20) / 100.0);
+            }
+            return bytes(workbook);
+        }
+    }
+
+    /**
+     * Rules matching the columns of {@link #ruleTable}.
+     */
+    static List<Rule> rules(int count) {
+        List<Rule> rules = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Rule rule = new Rule((long) i + 1, "Rule " + i, null);
+            rule.getConditions().put("Age", String.valueOf(18 + i % 60));
+            rule.getConditions().put("Country", i % 3 == 0 ? "US" : "DE");
+            rule.getConditions().put("Discount", String.valueOf((i % 20) / 100.0));
+            rules.add(rule);
+        }
+        return rules;
+    }
+
+    private static void header(Sheet sheet) {
+        Row row = sheet.createRow(0);
+        row.createCell(0).setCellValue("RuleSet");
+        row.createCell(1).setCellValue("com.example.rules");
+        row = sheet.createRow(1);
+        row.createCell(0).setCellValue("Declare");
+        row.createCell(1).setCellValue("declare Applicant age : int country : String discount : double end");
+    }
+
+    private static byte[] bytes(SXSSFWorkbook workbook) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        workbook.write(out);
+        workbook.dispose();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,173 @@
+package com.rulemanagement.benchmarks;
+
+import com.sun.net.httpserver.HttpServer;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Many clients fetching rules at once through the REST API, each from its own repository behind a
+ * remote that answers every request after {@link #LATENCY_MILLIS}, as a hosted Git server would. Tomcat
+ * gets a small pool of {@link #TOMCAT_THREADS} platform threads, so with {@link #CLIENTS} clients the
+ * platform thread mode queues most requests behind fetches blocked on the remote, while the virtual
+ * thread mode serves them all at once. Reports fetches per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+// Mirrors live under java.io.tmpdir; a private one keeps the benchmark away from real mirrors
+@Fork(value = 1, jvmArgsAppend = "-Djava.io.tmpdir=target/jmh-tmp")
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Threads(FetchLoadBenchmark.CLIENTS)
+public class FetchLoadBenchmark {
+
+    static final int CLIENTS = 128;
+    private static final int TOMCAT_THREADS = 16;
+    private static final int LATENCY_MILLIS = 500;
+    private static final int ROWS = 100;
+    private static final String FILE_PATH = "rules/table.xlsx";
+
+    @Param({"false", "true"})
+    public boolean virtualThreads;
+
+    private Path workDir;
+    private HttpServer remote;
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private URI fetchUri;
+    private final AtomicInteger clients = new AtomicInteger();
+
+    @State(Scope.Thread)
+    public static class Client {
+        private String body;
+
+        @Setup(Level.Trial)
+        public void setUp(FetchLoadBenchmark benchmark) {
+            // One repository per client, so clients never wait on each other's mirror
+            int repo = benchmark.clients.getAndIncrement();
+            body = String.format("{\"url\":\"http://localhost:%d/repo-%d.git\",\"branch\":\"main\",\"filePath\":\"%s\"}",
+                benchmark.remote.getAddress().getPort(), repo, FILE_PATH);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, GitAPIException {
+        Files.createDirectories(Paths.get(System.getProperty("java.io.tmpdir")));
+        workDir = Files.createTempDirectory("fetch-load-");
+        Path bare = createRemote(workDir);
+
+        remote = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        remote.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        // Serves the repository's files as Git's dumb HTTP transport reads them, whatever the repo-N prefix
+        remote.createContext("/", exchange -> {
+            try {
+                Thread.sleep(LATENCY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            String path = exchange.getRequestURI().getPath();
+            Path file = bare.resolve(path.substring(path.indexOf(".git/") + 5)).normalize();
+            if (!file.startsWith(bare) || !Files.isRegularFile(file)) {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+            }
+            exchange.sendResponseHeaders(200, Files.size(file));
+            try (OutputStream out = exchange.getResponseBody()) {
+                Files.copy(file, out);
+            }
+        });
+        remote.start();
+
+        context = BenchmarkContext.startServer(
+            "rule-management.virtual-threads.enabled=" + virtualThreads,
+            "server.tomcat.threads.max=" + TOMCAT_THREADS,
+            // The dumb HTTP transport cannot fetch shallow
+            "rule-management.git.fetch-depth=0",
+            "rule-management.workspaces.max-count=" + (CLIENTS * 2));
+        int port = Integer.parseInt(context.getEnvironment().getProperty("local.server.port"));
+        fetchUri = URI.create("http://localhost:" + port + "/api/rules/fetch");
+        client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+        remote.stop(0);
+        FileSystemUtils.deleteRecursively(workDir);
+        FileSystemUtils.deleteRecursively(Paths.get(System.getProperty("java.io.tmpdir"), "rule-management", "mirrors"));
+    }
+
+    @Benchmark
+    public int fetch(Client fetching) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(fetchUri)
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(fetching.body))
+            .build();
+        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Fetch failed with status " + response.statusCode());
+        }
+        return response.statusCode();
+    }
+
+    /**
+     * A bare repository holding one decision table, with the index files the dumb HTTP transport needs.
+     */
+    private static Path createRemote(Path workDir) throws IOException, GitAPIException {
+        Path bare = workDir.resolve("remote.git");
+        Path source = workDir.resolve("source");
+        try (Git remote = Git.init().setBare(true).setDirectory(bare.toFile()).setInitialBranch("main").call();
+             Git git = Git.init().setDirectory(source.toFile()).setInitialBranch("main").call()) {
+            Files.createDirectories(source.resolve("rules"));
+            Files.write(source.resolve(FILE_PATH), DecisionTables.ruleTable(ROWS));
+            git.add().addFilepattern(FILE_PATH).call();
+            git.commit().setMessage("Rules").setAuthor("bench", "bench@example.com")
+                .setCommitter("bench", "bench@example.com").call();
+            git.push().setRemote(bare.toUri().toString()).add("main").call();
+
+            StringBuilder refs = new StringBuilder();
+            Repository repository = remote.getRepository();
+            for (Ref ref : repository.getRefDatabase().getRefs()) {
+                refs.append(ref.getObjectId().name()).append('\t').append(ref.getName()).append('\n');
+            }
+            Files.createDirectories(bare.resolve("info"));
+            Files.write(bare.resolve("info/refs"), refs.toString().getBytes(StandardCharsets.UTF_8));
+
+            StringBuilder packs = new StringBuilder();
+            File[] packFiles = bare.resolve("objects/pack").toFile().listFiles((dir, name) -> name.endsWith(".pack"));
+            if (packFiles != null) {
+                for (File pack : packFiles) {
+                    packs.append("P ").append(pack.getName()).append('\n');
+                }
+            }
+            Files.createDirectories(bare.resolve("objects/info"));
+            Files.write(bare.resolve("objects/info/packs"), packs.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        return bare;
+    }
+}
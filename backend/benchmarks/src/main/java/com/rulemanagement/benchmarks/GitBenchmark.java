@@ -0,0 +1,125 @@
+package com.rulemanagement.benchmarks;
+
+import com.rulemanagement.model.GitRepository;
+import com.rulemanagement.service.GitService;
+import com.rulemanagement.service.RuleTemplate;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Git access against a local bare repository holding a history of workbook revisions: cloning the
+ * branch into an empty mirror, fetching when it is already up to date, and pushing a new branch.
+ * Runs with a shallow fetch and with full history.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+// Mirrors live under java.io.tmpdir; a private one keeps the clone benchmark away from real mirrors
+@Fork(value = 1, jvmArgsAppend = "-Djava.io.tmpdir=target/jmh-tmp")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class GitBenchmark {
+
+    private static final int REVISIONS = 30;
+    private static final int ROWS = 2000;
+    private static final String FILE_PATH = "rules/table.xlsx";
+
+    // 1 fetches only the branch tip; 0 fetches the full history
+    @Param({"1", "0"})
+    public int fetchDepth;
+
+    private Path workDir;
+    private ConfigurableApplicationContext context;
+    private GitService gitService;
+    private GitRepository gitRepo;
+    private RuleTemplate template;
+    private File workbook;
+    private int pushes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, GitAPIException {
+        Files.createDirectories(Paths.get(System.getProperty("java.io.tmpdir")));
+        workDir = Files.createTempDirectory("git-bench-");
+        Path bare = workDir.resolve("remote.git");
+        Path source = workDir.resolve("source");
+
+        try (Git remote = Git.init().setBare(true).setDirectory(bare.toFile()).setInitialBranch("main").call();
+             Git git = Git.init().setDirectory(source.toFile()).setInitialBranch("main").call()) {
+            Files.createDirectories(source.resolve("rules"));
+            for (int i = 0; i < REVISIONS; i++) {
+                Files.write(source.resolve(FILE_PATH), DecisionTables.ruleTable(ROWS + i));
+                git.add().addFilepattern(FILE_PATH).call();
+                git.commit().setMessage("Revision " + i).setAuthor("bench", "bench@example.com")
+                    .setCommitter("bench", "bench@example.com").call();
+            }
+            git.push().setRemote(bare.toUri().toString()).add("main").call();
+        }
+
+        gitRepo = new GitRepository();
+        gitRepo.setUrl(bare.toUri().toString());
+        gitRepo.setBranch("main");
+        gitRepo.setFilePath(FILE_PATH);
+
+        context = BenchmarkContext.start("rule-management.git.fetch-depth=" + fetchDepth);
+        gitService = context.getBean(GitService.class);
+        template = gitService.fetchTemplate(gitRepo);
+        workbook = workDir.resolve("edited.xlsx").toFile();
+        Files.write(workbook.toPath(), DecisionTables.ruleTable(ROWS + REVISIONS));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+        FileSystemUtils.deleteRecursively(workDir);
+        FileSystemUtils.deleteRecursively(mirrorsDir());
+    }
+
+    @State(Scope.Benchmark)
+    public static class EmptyMirror {
+        @Setup(Level.Invocation)
+        public void deleteMirrors() throws IOException, InterruptedException {
+            // JGit may still be packing the last clone in the background, adding and removing files
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    FileSystemUtils.deleteRecursively(mirrorsDir());
+                    return;
+                } catch (IOException e) {
+                    if (attempt == 20) {
+                        throw e;
+                    }
+                    Thread.sleep(50);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public RuleTemplate cloneMirror(EmptyMirror emptyMirror) throws IOException, GitAPIException {
+        return gitService.fetchTemplate(gitRepo);
+    }
+
+    @Benchmark
+    public RuleTemplate fetchUpToDate() throws IOException, GitAPIException {
+        return gitService.fetchTemplate(gitRepo);
+    }
+
+    @Benchmark
+    public String push() throws IOException, GitAPIException {
+        return gitService.createBranchAndPush(gitRepo, template.getCommitId(), workbook,
+            "bench/" + fetchDepth + "-" + pushes++, "Benchmark push");
+    }
+
+    private static Path mirrorsDir() {
+        return Paths.get(System.getProperty("java.io.tmpdir"), "rule-management", "mirrors");
+    }
+}
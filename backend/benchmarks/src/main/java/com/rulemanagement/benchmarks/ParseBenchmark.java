@@ -0,0 +1,82 @@
+package com.rulemanagement.benchmarks;
+
+import com.rulemanagement.service.ExcelService;
+import com.rulemanagement.service.RuleTemplate;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a workbook into rules, on one thread and on one thread per core. Reports workbooks per
+ * second, and parsed rows per second in the {@code rows} counter.
+ * <p>
+ * The {@code streaming} parser reads the sheet XML as the backend does; {@code dom} first loads the whole
+ * workbook from a file with {@link WorkbookFactory}, as the backend did before, and reads the same rules
+ * from it. A DOM of a million rows takes several gigabytes, so that pair needs a large heap, e.g.
+ * {@code -jvmArgsAppend -Xmx4g}, or fails with an OutOfMemoryError; {@code -p parser=streaming} leaves
+ * it out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ParseBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int rows;
+
+    @Param({"streaming", "dom"})
+    public String parser;
+
+    // 1 parses sequentially; 0 uses one thread per core
+    @Param({"1", "0"})
+    public int parallelism;
+
+    private ConfigurableApplicationContext context;
+    private ExcelService excelService;
+    private RuleTemplate template;
+    private File workbookFile;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class ParsedRows {
+        public long rows;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        context = BenchmarkContext.start("rule-management.parser.parallelism=" + parallelism);
+        excelService = context.getBean(ExcelService.class);
+        template = new RuleTemplate("rules/table.xlsx", DecisionTables.ruleTable(rows), "bench", "bench");
+        workbookFile = Files.createTempFile("parse-", ".xlsx").toFile();
+        Files.write(workbookFile.toPath(), template.getContent());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+        Files.deleteIfExists(workbookFile.toPath());
+    }
+
+    @Benchmark
+    public long parse(ParsedRows parsed) throws IOException {
+        long[] count = new long[1];
+        if ("dom".equals(parser)) {
+            try (Workbook workbook = WorkbookFactory.create(workbookFile, null, true)) {
+                excelService.parseWorkbook(workbook, rule -> count[0]++);
+            }
+        } else {
+            excelService.parseExcelFile(template, rule -> count[0]++);
+        }
+        parsed.rows += count[0];
+        return count[0];
+    }
+}
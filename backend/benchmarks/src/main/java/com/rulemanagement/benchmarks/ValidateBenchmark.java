@@ -0,0 +1,66 @@
+package com.rulemanagement.benchmarks;
+
+import com.rulemanagement.model.ValidationResult;
+import com.rulemanagement.service.ValidationService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drools validation of a workbook: compiled from scratch, and answered from the compilation cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ValidateBenchmark {
+
+    @Param({"100", "1000"})
+    public int rows;
+
+    private ConfigurableApplicationContext context;
+    private File workbook;
+    private ValidationService warmService;
+    private ValidationService coldService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workbook = Files.createTempFile("validate-", ".xlsx").toFile();
+        Files.write(workbook.toPath(), DecisionTables.validTable(rows));
+
+        context = BenchmarkContext.start();
+        warmService = context.getBean(ValidationService.class);
+        ValidationResult result = warmService.validateDroolsFormat(workbook);
+        if (!result.isValid()) {
+            throw new IllegalStateException("Generated table does not validate: " + result.getErrors());
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void freshService() {
+        // A new instance with its own empty compilation cache
+        coldService = context.getAutowireCapableBeanFactory().createBean(ValidationService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+        Files.deleteIfExists(workbook.toPath());
+    }
+
+    @Benchmark
+    public ValidationResult cold() {
+        return coldService.validateDroolsFormat(workbook);
+    }
+
+    @Benchmark
+    public ValidationResult warm() {
+        return warmService.validateDroolsFormat(workbook);
+    }
+}
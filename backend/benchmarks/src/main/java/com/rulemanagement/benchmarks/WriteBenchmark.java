@@ -0,0 +1,74 @@
+package com.rulemanagement.benchmarks;
+
+import com.rulemanagement.model.Rule;
+import com.rulemanagement.service.ExcelService;
+import com.rulemanagement.service.RuleTemplate;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing rules back into the template: rewriting every row, and patching a handful of edited rows in
+ * place.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class WriteBenchmark {
+
+    private static final int EDITED_ROWS = 10;
+    private static final int FIRST_DATA_ROW = 7;
+
+    @Param({"1000", "10000", "100000"})
+    public int rows;
+
+    private ConfigurableApplicationContext context;
+    private ExcelService excelService;
+    private RuleTemplate template;
+    private List<Rule> rules;
+    private Map<Integer, Rule> editedRows;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        context = BenchmarkContext.start();
+        excelService = context.getBean(ExcelService.class);
+        template = new RuleTemplate("rules/table.xlsx", DecisionTables.ruleTable(rows), "bench", "bench");
+        rules = DecisionTables.rules(rows);
+
+        editedRows = new HashMap<>();
+        for (int i = 0; i < EDITED_ROWS; i++) {
+            int index = i * (rows / EDITED_ROWS);
+            editedRows.put(FIRST_DATA_ROW + index, rules.get(index));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public long rewriteAll() throws IOException {
+        return deleteAfterMeasuring(excelService.writeRulesToExcel(rules, template));
+    }
+
+    @Benchmark
+    public long patchEdited() throws IOException {
+        return deleteAfterMeasuring(excelService.patchRulesInExcel(template, editedRows,
+            Collections.emptySet(), Collections.emptyList()));
+    }
+
+    private static long deleteAfterMeasuring(File written) throws IOException {
+        long length = written.length();
+        Files.delete(written.toPath());
+        return length;
+    }
+}
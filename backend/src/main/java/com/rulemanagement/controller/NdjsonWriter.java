@@ -0,0 +1,43 @@
+package com.rulemanagement.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Writes values to a response body as newline-delimited JSON. Flushes every few hundred values, so the
+ * client gets the first ones while later ones are still being produced.
+ */
+class NdjsonWriter<T> {
+
+    private static final int FLUSH_EVERY = 256;
+
+    private final OutputStream out;
+    private final ObjectWriter writer;
+    private int unflushed;
+
+    NdjsonWriter(OutputStream out, ObjectMapper objectMapper, Class<T> type) {
+        this.out = out;
+        this.writer = objectMapper.writerFor(type);
+    }
+
+    void write(T value) {
+        try {
+            out.write(writer.writeValueAsBytes(value));
+            out.write('\n');
+            if (++unflushed == FLUSH_EVERY) {
+                out.flush();
+                unflushed = 0;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void finish() throws IOException {
+        out.flush();
+    }
+}
@@ -1,189 +1,469 @@
 package com.rulemanagement.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rulemanagement.model.EvaluationRequest;
+import com.rulemanagement.model.EvaluationResult;
 import com.rulemanagement.model.GitRepository;
+import com.rulemanagement.model.Job;
 import com.rulemanagement.model.PullRequestRequest;
 import com.rulemanagement.model.Rule;
-import com.rulemanagement.model.ValidationResult;
-import com.rulemanagement.service.ExcelService;
-import com.rulemanagement.service.GitService;
+import com.rulemanagement.model.RuleBatchOperation;
+import com.rulemanagement.model.RuleBatchResult;
+import com.rulemanagement.model.RulePage;
+import com.rulemanagement.model.RuleQuery;
+import com.rulemanagement.service.JobService;
+import com.rulemanagement.service.RequestTrace;
+import com.rulemanagement.service.RequestTracer;
+import com.rulemanagement.service.RuleEngineService;
+import com.rulemanagement.service.RuleNotWritableException;
 import com.rulemanagement.service.RuleService;
-import com.rulemanagement.service.ValidationService;
+import com.rulemanagement.service.RuleTemplate;
+import com.rulemanagement.service.RuleVersionConflictException;
+import com.rulemanagement.service.RuleWorkspace;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/rules")
-@CrossOrigin(origins = {"http://localhost:4200", "https://*.vercel.app"})
+@CrossOrigin(origins = {"http://localhost:4200", "https://*.vercel.app"}, exposedHeaders = {RuleController.WORKSPACE_HEADER, HttpHeaders.ETAG})
 public class RuleController {
 
+    public static final String WORKSPACE_HEADER = "X-Workspace-Id";
+    public static final String NDJSON = "application/x-ndjson";
+
     @Autowired
     private RuleService ruleService;
 
     @Autowired
-    private ExcelService excelService;
+    private JobService jobService;
+
+    @Autowired
+    private RuleEngineService ruleEngineService;
 
     @Autowired
-    private GitService gitService;
+    private RequestTracer tracer;
 
     @Autowired
-    private ValidationService validationService;
+    private ObjectMapper objectMapper;
 
     @PostMapping("/fetch")
     public ResponseEntity<?> fetchRulesFromGit(@RequestBody GitRepository gitRepo) {
-        try {
+        RequestTrace trace = tracer.start("fetch", "workspace " + ruleService.workspaceIdFor(gitRepo));
+        try (RequestTrace.Scope scope = trace.attach()) {
             List<Rule> rules = ruleService.fetchRulesFromGit(gitRepo);
-            return ResponseEntity.ok(rules);
+            return ResponseEntity.ok()
+                    .header(WORKSPACE_HEADER, ruleService.workspaceIdFor(gitRepo))
+                    .body(rules);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body("Error fetching rules from Git: " + e.getMessage());
+        } finally {
+            tracer.finish(trace);
         }
     }
 
+    /**
+     * Streams the fetched rules as newline-delimited JSON while the workbook is still being parsed. Git
+     * errors are reported before the response starts; a parse error cuts the stream short.
+     */
+    @PostMapping(value = "/fetch", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamRulesFromGit(@RequestBody GitRepository gitRepo) {
+        // The trace follows the request onto the thread writing the response
+        RequestTrace trace = tracer.start("fetch", "workspace " + ruleService.workspaceIdFor(gitRepo));
+        RuleTemplate template;
+        try (RequestTrace.Scope scope = trace.attach()) {
+            template = ruleService.fetchTemplate(gitRepo);
+        } catch (Exception e) {
+            tracer.finish(trace);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .contentType(MediaType.TEXT_PLAIN)
+                    .body(text("Error fetching rules from Git: " + e.getMessage()));
+        }
+
+        return ResponseEntity.ok()
+                .header(WORKSPACE_HEADER, ruleService.workspaceIdFor(gitRepo))
+                .contentType(MediaType.parseMediaType(NDJSON))
+                .body(out -> {
+                    try (RequestTrace.Scope scope = trace.attach()) {
+                        NdjsonWriter<Rule> writer = new NdjsonWriter<>(out, objectMapper, Rule.class);
+                        ruleService.loadWorkspace(gitRepo, template, writer::write);
+                        writer.finish();
+                    } finally {
+                        tracer.finish(trace);
+                    }
+                });
+    }
+
+    /**
+     * Without parameters returns every rule. With any of {@code limit}, {@code cursor}, {@code sort}
+     * ({@code id} or {@code name}), {@code order}, {@code name} (a prefix), {@code active},
+     * {@code condition.<column>} or {@code action.<column>} returns one page and the cursor of the next.
+     */
     @GetMapping
-    public ResponseEntity<List<Rule>> getAllRules() {
-        List<Rule> rules = ruleService.getAllRules();
-        return ResponseEntity.ok(rules);
+    public ResponseEntity<?> getAllRules(@RequestParam Map<String, String> params,
+            @RequestHeader(value = WORKSPACE_HEADER, required = false) String workspaceId) {
+        if (params.isEmpty()) {
+            // Serialized straight from the workspace, without copying the rules into a list first
+            Collection<Rule> rules = ruleService.getRulesView(workspaceId);
+            return ResponseEntity.ok(rules);
+        }
+
+        try {
+            RulePage page = ruleService.queryRules(workspaceId, toQuery(params));
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    /**
+     * Every rule of the workspace as newline-delimited JSON, written out as it is read.
+     */
+    @GetMapping(produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamAllRules(@RequestParam Map<String, String> params,
+            @RequestHeader(value = WORKSPACE_HEADER, required = false) String workspaceId) {
+        if (!params.isEmpty()) {
+            return ResponseEntity.badRequest()
+                    .contentType(MediaType.TEXT_PLAIN)
+                    .body(text("Pages of rules are only returned as JSON"));
+        }
+
+        Collection<Rule> rules = ruleService.getRulesView(workspaceId);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NDJSON))
+                .body(out -> {
+                    NdjsonWriter<Rule> writer = new NdjsonWriter<>(out, objectMapper, Rule.class);
+                    rules.forEach(writer::write);
+                    writer.finish();
+                });
+    }
+
+    /**
+     * Rules having, for every word of {@code q}, a word in their name, description or values starting
+     * with it; in id order, a page at a time.
+     */
+    @GetMapping("/search")
+    public ResponseEntity<?> searchRules(@RequestParam("q") String text,
+            @RequestParam(defaultValue = "" + RuleQuery.DEFAULT_LIMIT) int limit,
+            @RequestParam(required = false) String cursor,
+            @RequestHeader(value = WORKSPACE_HEADER, required = false) String workspaceId) {
+        if (limit < 1 || limit > RuleQuery.MAX_LIMIT) {
+            return ResponseEntity.badRequest().body("limit must be between 1 and " + RuleQuery.MAX_LIMIT);
+        }
+        try {
+            RulePage page = ruleService.searchRules(workspaceId, text, limit, cursor);
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<Rule> getRuleById(@PathVariable Long id) {
-        Rule rule = ruleService.getRuleById(id);
+    public ResponseEntity<Rule> getRuleById(@PathVariable Long id,
+            @RequestHeader(value = WORKSPACE_HEADER, required = false) String workspaceId) {
+        Rule rule = ruleService.getRuleById(workspaceId, id);
         if (rule != null) {
-            return ResponseEntity.ok(rule);
+            return ResponseEntity.ok().eTag(String.valueOf(rule.getVersion())).body(rule);
         }
         return ResponseEntity.notFound().build();
     }
 
     @PostMapping
-    public ResponseEntity<Rule> createRule(@RequestBody Rule rule) {
-        Rule createdRule = ruleService.createRule(rule);
-        return ResponseEntity.status(HttpStatus.CREATED).body(createdRule);
+    public ResponseEntity<Rule> createRule(@RequestBody Rule rule,
+            @RequestHeader(value = WORKSPACE_HEADER, required = false) String workspaceId) {
+        Rule createdRule = ruleService.createRule(workspaceId, rule);
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .eTag(String.valueOf(createdRule.getVersion()))
+                .body(createdRule);
     }
 
     @PutMapping("/{id}")
-    public ResponseEntity<Rule> updateRule(@PathVariable Long id, @RequestBody Rule rule) {
-        Rule updatedRule = ruleService.updateRule(id, rule);
-        if (updatedRule != null) {
-            return ResponseEntity.ok(updatedRule);
+    public ResponseEntity<?> updateRule(@PathVariable Long id, @RequestBody Rule rule,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestHeader(value = WORKSPACE_HEADER, required = false) String workspaceId) {
+        try {
+            Rule updatedRule = ruleService.updateRule(workspaceId, id, rule, expectedVersion(ifMatch));
+            if (updatedRule != null) {
+                return ResponseEntity.ok().eTag(String.valueOf(updatedRule.getVersion())).body(updatedRule);
+            }
+            return ResponseEntity.notFound().build();
+        } catch (RuleVersionConflictException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .eTag(String.valueOf(e.getCurrentRule().getVersion()))
+                    .body(e.getCurrentRule());
+        } catch (RuleNotWritableException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
         }
-        return ResponseEntity.notFound().build();
     }
 
-    @DeleteMapping("/{id}")
-    public ResponseEntity<Void> deleteRule(@PathVariable Long id) {
-        boolean deleted = ruleService.deleteRule(id);
-        if (deleted) {
-            return ResponseEntity.noContent().build();
+    /**
+     * Applies a list of create, update and delete operations to the workspace all together or not at all.
+     * The body is a JSON array, or newline-delimited JSON for batches too large to send as one document;
+     * the per-operation results come back in the same format.
+     */
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> applyBatch(@RequestBody List<RuleBatchOperation> operations,
+            @RequestHeader(value = WORKSPACE_HEADER, required = false) String workspaceId) {
+        try {
+            List<RuleBatchResult> results = ruleService.applyBatch(workspaceId, operations);
+            return ResponseEntity.status(batchStatus(results)).body(results);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
         }
-        return ResponseEntity.notFound().build();
     }
 
-    @PostMapping("/save-to-git")
-    public ResponseEntity<?> saveRulesToGit(@RequestBody PullRequestRequest request) {
+    @PostMapping(value = "/batch", consumes = NDJSON)
+    public ResponseEntity<StreamingResponseBody> applyBatchStream(HttpServletRequest request,
+            @RequestHeader(value = WORKSPACE_HEADER, required = false) String workspaceId) {
+        List<RuleBatchResult> results;
         try {
-            List<Rule> rules = ruleService.getAllRules();
-            
-            if (rules.isEmpty()) {
-                return ResponseEntity.badRequest().body("No rules to save");
-            }
-            
-            File templateFile = gitService.fetchFileFromGit(request.getGitRepo());
-            
-            File updatedExcel = excelService.writeRulesToExcel(rules, templateFile);
-            
-            ValidationResult validation = validationService.validateDroolsFormat(updatedExcel);
-            if (!validation.isValid()) {
-                Map<String, Object> errorResponse = new HashMap<>();
-                errorResponse.put("valid", false);
-                errorResponse.put("errors", validation.getErrors());
-                errorResponse.put("warnings", validation.getWarnings());
-                return ResponseEntity.badRequest().body(errorResponse);
+            results = ruleService.applyBatch(workspaceId, ruleService.readBatch(request.getInputStream()));
+        } catch (IllegalArgumentException | IOException e) {
+            return ResponseEntity.badRequest()
+                    .contentType(MediaType.TEXT_PLAIN)
+                    .body(text("Invalid batch: " + e.getMessage()));
+        }
+
+        return ResponseEntity.status(batchStatus(results))
+                .contentType(MediaType.parseMediaType(NDJSON))
+                .body(out -> {
+                    NdjsonWriter<RuleBatchResult> writer = new NdjsonWriter<>(out, objectMapper, RuleBatchResult.class);
+                    results.forEach(writer::write);
+                    writer.finish();
+                });
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<?> deleteRule(@PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestHeader(value = WORKSPACE_HEADER, required = false) String workspaceId) {
+        try {
+            boolean deleted = ruleService.deleteRule(workspaceId, id, expectedVersion(ifMatch));
+            if (deleted) {
+                return ResponseEntity.noContent().build();
             }
-            
-            long timestamp = System.currentTimeMillis() / 1000;
-            String branchName = request.getBranchName() != null ? 
-                request.getBranchName() : 
-                "devin/" + timestamp + "-rules-update";
-            
-            String pushedBranch = gitService.createBranchAndPush(
-                request.getGitRepo(), 
-                updatedExcel, 
-                branchName,
-                request.getCommitMessage() != null ? 
-                    request.getCommitMessage() : 
-                    "Update decision table rules"
-            );
-            
+            return ResponseEntity.notFound().build();
+        } catch (RuleVersionConflictException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .eTag(String.valueOf(e.getCurrentRule().getVersion()))
+                    .build();
+        } catch (RuleNotWritableException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
+    }
+
+    /**
+     * Save, create-pr and validate run as background jobs. With {@code async=true} they answer 202 with
+     * the job straight away; otherwise the response is sent once the job finishes, without holding a
+     * request thread while it runs.
+     */
+    @PostMapping("/save-to-git")
+    public CompletableFuture<ResponseEntity<?>> saveRulesToGit(@RequestBody PullRequestRequest request,
+            @RequestParam(defaultValue = "false") boolean async,
+            @RequestHeader(value = WORKSPACE_HEADER, required = false) String workspaceId) {
+        if (workspaceId == null && request.getGitRepo() == null) {
+            return CompletableFuture.completedFuture(
+                ResponseEntity.badRequest().body("A workspace id or gitRepo is required"));
+        }
+        RuleWorkspace workspace = ruleService.getWorkspace(
+            workspaceId != null ? workspaceId : ruleService.workspaceIdFor(request.getGitRepo()));
+        if (workspace.getGitRepo() == null) {
+            return CompletableFuture.completedFuture(
+                ResponseEntity.badRequest().body("The workspace was not fetched from Git, so there is nowhere to save it"));
+        }
+        if (workspace.size() == 0) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body("No rules to save"));
+        }
+
+        if (!workspace.hasPendingChanges()) {
             Map<String, Object> response = new HashMap<>();
-            response.put("message", "Successfully pushed to branch");
-            response.put("branch", pushedBranch);
-            response.put("warnings", validation.getWarnings());
-            return ResponseEntity.ok(response);
-        } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                .body("Error saving to Git: " + e.getMessage());
+            response.put("message", "No changes to save");
+            response.put("branch", null);
+            return CompletableFuture.completedFuture(ResponseEntity.ok(response));
+        }
+
+        try {
+            return respond(jobService.submitSave(workspace, request), async, "Error saving to Git: ");
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(
+                ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage()));
         }
     }
 
     @PostMapping("/create-pr")
-    public ResponseEntity<?> createPullRequest(@RequestBody PullRequestRequest request) {
+    public CompletableFuture<ResponseEntity<?>> createPullRequest(@RequestBody PullRequestRequest request,
+            @RequestParam(defaultValue = "false") boolean async) {
+        GitRepository gitRepo = request.getGitRepo();
+        if (gitRepo == null || gitRepo.getUrl() == null || gitRepo.getUrl().isEmpty()
+                || gitRepo.getBranch() == null || gitRepo.getBranch().isEmpty()) {
+            return CompletableFuture.completedFuture(
+                ResponseEntity.badRequest().body("gitRepo with a url and base branch is required"));
+        }
+
+        if (request.getBranchName() == null || request.getBranchName().isEmpty()) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body("Branch name is required"));
+        }
+
+        if (request.getTitle() == null || request.getTitle().isEmpty()) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body("PR title is required"));
+        }
+
         try {
-            if (request.getBranchName() == null || request.getBranchName().isEmpty()) {
-                return ResponseEntity.badRequest().body("Branch name is required");
-            }
-            
-            if (request.getTitle() == null || request.getTitle().isEmpty()) {
-                return ResponseEntity.badRequest().body("PR title is required");
-            }
-            
-            String prUrl = gitService.createPullRequest(
-                request.getGitRepo(),
-                request.getBranchName(),
-                request.getTitle(),
-                request.getDescription() != null ? request.getDescription() : ""
-            );
-            
-            Map<String, String> response = new HashMap<>();
-            response.put("message", "Pull request created successfully");
-            response.put("prUrl", prUrl);
-            return ResponseEntity.ok(response);
-        } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                .body("Error creating PR: " + e.getMessage());
+            return respond(jobService.submitPullRequest(request), async, "Error creating PR: ");
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(
+                ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage()));
         }
     }
 
     @PostMapping("/validate")
-    public ResponseEntity<?> validateRules() {
+    public CompletableFuture<ResponseEntity<?>> validateRules(@RequestParam(defaultValue = "false") boolean async,
+            @RequestHeader(value = WORKSPACE_HEADER, required = false) String workspaceId) {
+        RuleWorkspace workspace = ruleService.getWorkspace(workspaceId);
+        if (workspace.size() == 0) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body("No rules to validate"));
+        }
+
+        if (workspace.getGitRepo() == null) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                .body("No Git repository configured. Please fetch rules from Git first."));
+        }
+
+        try {
+            return respond(jobService.submitValidate(workspace), async, "Validation error: ");
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(
+                ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage()));
+        }
+    }
+
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<Job> getJob(@PathVariable String jobId) {
+        Job job = jobService.getJob(jobId);
+        if (job != null) {
+            return ResponseEntity.ok(job);
+        }
+        return ResponseEntity.notFound().build();
+    }
+
+    @PostMapping("/evaluate")
+    public ResponseEntity<?> evaluateRules(@RequestBody EvaluationRequest request,
+            @RequestHeader(value = WORKSPACE_HEADER, required = false) String workspaceId) {
+        RuleWorkspace workspace = ruleService.getWorkspace(workspaceId);
         try {
-            List<Rule> rules = ruleService.getAllRules();
-            
-            if (rules.isEmpty()) {
-                return ResponseEntity.badRequest().body("No rules to validate");
+            List<EvaluationResult> results = ruleEngineService.evaluate(workspace, request);
+            return ResponseEntity.ok(results);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body("Evaluation error: " + e.getMessage());
+        }
+    }
+
+    private CompletableFuture<ResponseEntity<?>> respond(Job job, boolean async, String errorPrefix) {
+        if (async) {
+            return CompletableFuture.completedFuture(ResponseEntity.accepted()
+                .location(URI.create("/api/rules/jobs/" + job.getId()))
+                .body(job));
+        }
+
+        return jobService.whenFinished(job).thenApply(finished -> {
+            if (finished.getStatus() == Job.JobStatus.SUCCEEDED) {
+                return ResponseEntity.ok(finished.getResult());
             }
-            
-            GitRepository tempGitRepo = ruleService.getLastUsedGitRepo();
-            if (tempGitRepo == null) {
-                return ResponseEntity.badRequest()
-                    .body("No Git repository configured. Please fetch rules from Git first.");
+            if (finished.getResult() != null) {
+                return ResponseEntity.badRequest().body(finished.getResult());
             }
-            
-            File templateFile = gitService.fetchFileFromGit(tempGitRepo);
-            File excelFile = excelService.writeRulesToExcel(rules, templateFile);
-            
-            ValidationResult result = validationService.validateDroolsFormat(excelFile);
-            
-            return ResponseEntity.ok(result);
-        } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                .body("Validation error: " + e.getMessage());
+                .body(errorPrefix + finished.getError());
+        });
+    }
+
+    private static StreamingResponseBody text(String message) {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        return out -> out.write(bytes);
+    }
+
+    /**
+     * 200 when the batch applied, otherwise the status of the operation that stopped it.
+     */
+    private HttpStatus batchStatus(List<RuleBatchResult> results) {
+        for (RuleBatchResult result : results) {
+            if (!result.isApplied() && result.getStatus() != HttpStatus.FAILED_DEPENDENCY.value()) {
+                return HttpStatus.valueOf(result.getStatus());
+            }
+        }
+        return HttpStatus.OK;
+    }
+
+    private RuleQuery toQuery(Map<String, String> params) {
+        RuleQuery query = new RuleQuery();
+        for (Map.Entry<String, String> param : params.entrySet()) {
+            String key = param.getKey();
+            String value = param.getValue();
+            if (key.equals("limit")) {
+                int limit = Integer.parseInt(value);
+                if (limit < 1 || limit > RuleQuery.MAX_LIMIT) {
+                    throw new IllegalArgumentException("limit must be between 1 and " + RuleQuery.MAX_LIMIT);
+                }
+                query.setLimit(limit);
+            } else if (key.equals("cursor")) {
+                query.setCursor(value);
+            } else if (key.equals("sort")) {
+                if (!value.equalsIgnoreCase("id") && !value.equalsIgnoreCase("name")) {
+                    throw new IllegalArgumentException("sort must be id or name");
+                }
+                query.setSort(RuleQuery.SortField.valueOf(value.toUpperCase()));
+            } else if (key.equals("order")) {
+                if (!value.equalsIgnoreCase("asc") && !value.equalsIgnoreCase("desc")) {
+                    throw new IllegalArgumentException("order must be asc or desc");
+                }
+                query.setDescending(value.equalsIgnoreCase("desc"));
+            } else if (key.equals("name")) {
+                query.setNamePrefix(value);
+            } else if (key.equals("active")) {
+                query.setActive(Boolean.parseBoolean(value));
+            } else if (key.startsWith("condition.")) {
+                query.getConditions().put(key.substring("condition.".length()), value);
+            } else if (key.startsWith("action.")) {
+                query.getActions().put(key.substring("action.".length()), value);
+            } else {
+                throw new IllegalArgumentException("Unknown query parameter: " + key);
+            }
+        }
+        return query;
+    }
+
+    private Long expectedVersion(String ifMatch) {
+        if (ifMatch == null || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String tag = ifMatch.trim();
+        if (tag.startsWith("W/")) {
+            tag = tag.substring(2);
+        }
+        try {
+            return Long.parseLong(tag.replace("\"", ""));
+        } catch (NumberFormatException e) {
+            // An ETag we never issued cannot match any version
+            return -1L;
         }
     }
 }
@@ -0,0 +1,34 @@
+package com.rulemanagement.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class EvaluationFact {
+    private String type;
+    private Map<String, Object> values;
+
+    public EvaluationFact() {
+        this.values = new HashMap<>();
+    }
+
+    public EvaluationFact(String type, Map<String, Object> values) {
+        this.type = type;
+        this.values = values != null ? values : new HashMap<>();
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public Map<String, Object> getValues() {
+        return values;
+    }
+
+    public void setValues(Map<String, Object> values) {
+        this.values = values;
+    }
+}
@@ -0,0 +1,20 @@
+package com.rulemanagement.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class EvaluationRequest {
+    private List<List<EvaluationFact>> batches;
+
+    public EvaluationRequest() {
+        this.batches = new ArrayList<>();
+    }
+
+    public List<List<EvaluationFact>> getBatches() {
+        return batches;
+    }
+
+    public void setBatches(List<List<EvaluationFact>> batches) {
+        this.batches = batches;
+    }
+}
@@ -0,0 +1,35 @@
+package com.rulemanagement.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class EvaluationResult {
+    private List<String> firedRules;
+    private List<EvaluationFact> facts;
+
+    public EvaluationResult() {
+        this.firedRules = new ArrayList<>();
+        this.facts = new ArrayList<>();
+    }
+
+    public EvaluationResult(List<String> firedRules, List<EvaluationFact> facts) {
+        this.firedRules = firedRules != null ? firedRules : new ArrayList<>();
+        this.facts = facts != null ? facts : new ArrayList<>();
+    }
+
+    public List<String> getFiredRules() {
+        return firedRules;
+    }
+
+    public void setFiredRules(List<String> firedRules) {
+        this.firedRules = firedRules;
+    }
+
+    public List<EvaluationFact> getFacts() {
+        return facts;
+    }
+
+    public void setFacts(List<EvaluationFact> facts) {
+        this.facts = facts;
+    }
+}
@@ -0,0 +1,122 @@
+package com.rulemanagement.model;
+
+public class Job {
+
+    public enum JobType {
+        SAVE_TO_GIT,
+        VALIDATE,
+        CREATE_PR
+    }
+
+    public enum JobStatus {
+        QUEUED,
+        RUNNING,
+        SUCCEEDED,
+        FAILED
+    }
+
+    private String id;
+    private JobType type;
+    private volatile JobStatus status = JobStatus.QUEUED;
+    private volatile String stage;
+    private volatile int completedStages;
+    private int totalStages;
+    private volatile Object result;
+    private volatile String error;
+    private long submittedAt;
+    private volatile Long finishedAt;
+
+    public Job() {
+    }
+
+    public Job(String id, JobType type, int totalStages) {
+        this.id = id;
+        this.type = type;
+        this.totalStages = totalStages;
+        this.submittedAt = System.currentTimeMillis();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public JobType getType() {
+        return type;
+    }
+
+    public void setType(JobType type) {
+        this.type = type;
+    }
+
+    public JobStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(JobStatus status) {
+        this.status = status;
+    }
+
+    public String getStage() {
+        return stage;
+    }
+
+    public void setStage(String stage) {
+        this.stage = stage;
+    }
+
+    public int getCompletedStages() {
+        return completedStages;
+    }
+
+    public void setCompletedStages(int completedStages) {
+        this.completedStages = completedStages;
+    }
+
+    public int getTotalStages() {
+        return totalStages;
+    }
+
+    public void setTotalStages(int totalStages) {
+        this.totalStages = totalStages;
+    }
+
+    public Object getResult() {
+        return result;
+    }
+
+    public void setResult(Object result) {
+        this.result = result;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public long getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public void setSubmittedAt(long submittedAt) {
+        this.submittedAt = submittedAt;
+    }
+
+    public Long getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(Long finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    public boolean isFinished() {
+        return status == JobStatus.SUCCEEDED || status == JobStatus.FAILED;
+    }
+}
@@ -1,5 +1,7 @@
 package com.rulemanagement.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import java.util.Map;
 import java.util.HashMap;
 
@@ -10,6 +12,10 @@ public class Rule {
     private Map<String, Object> actions;
     private String description;
     private boolean active;
+    private long version;
+    private String sheet;
+    private String table;
+    private Integer sourceRow;
 
     public Rule() {
         this.conditions = new HashMap<>();
@@ -24,6 +30,12 @@ public class Rule {
         this.description = description;
     }
 
+    public Rule(Map<String, Object> conditions, Map<String, Object> actions) {
+        this.conditions = conditions;
+        this.actions = actions;
+        this.active = true;
+    }
+
     public Long getId() {
         return id;
     }
@@ -71,4 +83,38 @@ public class Rule {
     public void setActive(boolean active) {
         this.active = active;
     }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public String getSheet() {
+        return sheet;
+    }
+
+    public void setSheet(String sheet) {
+        this.sheet = sheet;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public void setTable(String table) {
+        this.table = table;
+    }
+
+    @JsonIgnore
+    public Integer getSourceRow() {
+        return sourceRow;
+    }
+
+    @JsonIgnore
+    public void setSourceRow(Integer sourceRow) {
+        this.sourceRow = sourceRow;
+    }
 }
@@ -0,0 +1,70 @@
+package com.rulemanagement.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+public class RuleBatchOperation {
+
+    public enum Operation {
+        CREATE,
+        UPDATE,
+        DELETE;
+
+        @JsonCreator
+        public static Operation fromValue(String value) {
+            return valueOf(value.toUpperCase());
+        }
+
+        @JsonValue
+        public String toValue() {
+            return name().toLowerCase();
+        }
+    }
+
+    private Operation op;
+    private Long id;
+    private Long expectedVersion;
+    private Rule rule;
+
+    public RuleBatchOperation() {
+    }
+
+    public RuleBatchOperation(Operation op, Long id, Long expectedVersion, Rule rule) {
+        this.op = op;
+        this.id = id;
+        this.expectedVersion = expectedVersion;
+        this.rule = rule;
+    }
+
+    public Operation getOp() {
+        return op;
+    }
+
+    public void setOp(Operation op) {
+        this.op = op;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getExpectedVersion() {
+        return expectedVersion;
+    }
+
+    public void setExpectedVersion(Long expectedVersion) {
+        this.expectedVersion = expectedVersion;
+    }
+
+    public Rule getRule() {
+        return rule;
+    }
+
+    public void setRule(Rule rule) {
+        this.rule = rule;
+    }
+}
@@ -0,0 +1,75 @@
+package com.rulemanagement.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class RuleBatchResult {
+    private int index;
+    private RuleBatchOperation.Operation op;
+    private Long id;
+    private int status;
+    private Long version;
+    private String error;
+
+    public RuleBatchResult() {
+    }
+
+    public RuleBatchResult(int index, RuleBatchOperation.Operation op, Long id, int status) {
+        this.index = index;
+        this.op = op;
+        this.id = id;
+        this.status = status;
+    }
+
+    public boolean isApplied() {
+        return status < 300;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public RuleBatchOperation.Operation getOp() {
+        return op;
+    }
+
+    public void setOp(RuleBatchOperation.Operation op) {
+        this.op = op;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
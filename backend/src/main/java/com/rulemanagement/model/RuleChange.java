@@ -0,0 +1,47 @@
+package com.rulemanagement.model;
+
+public class RuleChange {
+
+    public enum ChangeType {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+
+    private Long ruleId;
+    private ChangeType type;
+    private long version;
+
+    public RuleChange() {
+    }
+
+    public RuleChange(Long ruleId, ChangeType type, long version) {
+        this.ruleId = ruleId;
+        this.type = type;
+        this.version = version;
+    }
+
+    public Long getRuleId() {
+        return ruleId;
+    }
+
+    public void setRuleId(Long ruleId) {
+        this.ruleId = ruleId;
+    }
+
+    public ChangeType getType() {
+        return type;
+    }
+
+    public void setType(ChangeType type) {
+        this.type = type;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+}
@@ -0,0 +1,34 @@
+package com.rulemanagement.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class RulePage {
+    private List<Rule> items;
+    private String nextCursor;
+
+    public RulePage() {
+        this.items = new ArrayList<>();
+    }
+
+    public RulePage(List<Rule> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Rule> getItems() {
+        return items;
+    }
+
+    public void setItems(List<Rule> items) {
+        this.items = items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
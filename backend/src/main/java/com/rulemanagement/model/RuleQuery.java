@@ -0,0 +1,91 @@
+package com.rulemanagement.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class RuleQuery {
+
+    public enum SortField {
+        ID,
+        NAME
+    }
+
+    public static final int DEFAULT_LIMIT = 50;
+    public static final int MAX_LIMIT = 1000;
+
+    private int limit = DEFAULT_LIMIT;
+    private String cursor;
+    private SortField sort = SortField.ID;
+    private boolean descending;
+    private String namePrefix;
+    private Boolean active;
+    private Map<String, String> conditions = new LinkedHashMap<>();
+    private Map<String, String> actions = new LinkedHashMap<>();
+
+    public RuleQuery() {
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    public SortField getSort() {
+        return sort;
+    }
+
+    public void setSort(SortField sort) {
+        this.sort = sort;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    public void setDescending(boolean descending) {
+        this.descending = descending;
+    }
+
+    public String getNamePrefix() {
+        return namePrefix;
+    }
+
+    public void setNamePrefix(String namePrefix) {
+        this.namePrefix = namePrefix;
+    }
+
+    public Boolean getActive() {
+        return active;
+    }
+
+    public void setActive(Boolean active) {
+        this.active = active;
+    }
+
+    public Map<String, String> getConditions() {
+        return conditions;
+    }
+
+    public void setConditions(Map<String, String> conditions) {
+        this.conditions = conditions;
+    }
+
+    public Map<String, String> getActions() {
+        return actions;
+    }
+
+    public void setActions(Map<String, String> actions) {
+        this.actions = actions;
+    }
+}
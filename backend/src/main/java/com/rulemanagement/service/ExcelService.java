@@ -1,154 +1,494 @@
 package com.rulemanagement.service;
 
 import com.rulemanagement.model.Rule;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.xml.sax.SAXException;
 
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.XMLEvent;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 
 @Service
 public class ExcelService {
 
+    // Bump whenever parsing would produce different rules from the same workbook
+    public static final int PARSER_VERSION = 3;
+
+    private static final int HEADER_SCAN_ROWS = 20;
+    private static final int STREAMING_ROW_WINDOW = 100;
+
+    @Value("${rule-management.parser.parallelism:0}")
+    private int parallelism;
+
+    @Value("${rule-management.excel.patch-max-bytes:4194304}")
+    private long patchMaxBytes;
+
+    @Autowired
+    private PipelineMetrics metrics;
+
+    private ForkJoinPool parsePool;
+
+    @PostConstruct
+    void startParsePool() {
+        parsePool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    @PreDestroy
+    void stopParsePool() {
+        parsePool.shutdownNow();
+    }
+
     public List<Rule> parseExcelFile(File excelFile) throws IOException {
         List<Rule> rules = new ArrayList<>();
-        
-        try (FileInputStream fis = new FileInputStream(excelFile)) {
-            Workbook workbook;
-            String fileName = excelFile.getName().toLowerCase();
-            
-            if (fileName.endsWith(".xlsx")) {
-                workbook = new XSSFWorkbook(fis);
-            } else if (fileName.endsWith(".xls")) {
-                workbook = new HSSFWorkbook(fis);
-            } else {
-                throw new IOException("Unsupported file format. Only .xlsx and .xls files are supported.");
+        parseExcelFile(excelFile, rules::add);
+        return rules;
+    }
+
+    public void parseExcelFile(File excelFile, Consumer<Rule> ruleConsumer) throws IOException {
+        String fileName = excelFile.getName().toLowerCase();
+
+        if (fileName.endsWith(".xlsx")) {
+            try (OPCPackage pkg = OPCPackage.open(excelFile, PackageAccess.READ)) {
+                parseXlsx(pkg, ruleConsumer);
+            } catch (InvalidFormatException e) {
+                throw new IOException("Failed to read Excel file: " + e.getMessage(), e);
             }
+        } else if (fileName.endsWith(".xls")) {
+            try (FileInputStream fis = new FileInputStream(excelFile);
+                 Workbook workbook = new HSSFWorkbook(fis)) {
+                parseWorkbook(workbook, ruleConsumer);
+            }
+        } else {
+            throw new IOException("Unsupported file format. Only .xlsx and .xls files are supported.");
+        }
+    }
 
-            Sheet sheet = workbook.getSheetAt(0);
-            Iterator<Row> rowIterator = sheet.iterator();
-
-            List<String> headers = new ArrayList<>();
-            if (rowIterator.hasNext()) {
-                Row headerRow = rowIterator.next();
-                for (Cell cell : headerRow) {
-                    headers.add(getCellValueAsString(cell));
-                }
-            }
-
-            long ruleId = 1;
-            while (rowIterator.hasNext()) {
-                Row row = rowIterator.next();
-                Rule rule = new Rule();
-                rule.setId(ruleId++);
-
-                Map<String, Object> conditions = new HashMap<>();
-                Map<String, Object> actions = new HashMap<>();
-
-                for (int i = 0; i < headers.size() && i < row.getLastCellNum(); i++) {
-                    String header = headers.get(i);
-                    Cell cell = row.getCell(i);
-                    String cellValue = getCellValueAsString(cell);
-
-                    if (header.toLowerCase().contains("name") || header.toLowerCase().contains("rule")) {
-                        rule.setName(cellValue);
-                    } else if (header.toLowerCase().contains("description")) {
-                        rule.setDescription(cellValue);
-                    } else if (header.toLowerCase().contains("condition") || 
-                               header.toLowerCase().contains("when") ||
-                               header.toLowerCase().contains("if")) {
-                        conditions.put(header, cellValue);
-                    } else if (header.toLowerCase().contains("action") || 
-                               header.toLowerCase().contains("then") ||
-                               header.toLowerCase().contains("do")) {
-                        actions.put(header, cellValue);
-                    } else {
-                        conditions.put(header, cellValue);
-                    }
+    /**
+     * Parses every sheet of the template in parallel and hands the rules to {@code ruleConsumer} in
+     * sheet and row order, once the rows before them are done.
+     */
+    public void parseExcelFile(RuleTemplate template, Consumer<Rule> ruleConsumer) throws IOException {
+        try (PipelineMetrics.Stage stage = metrics.stage("excel.parse")) {
+            // Rules are handed on in order from the calling thread
+            long[] rows = new long[1];
+            parseTemplate(template, ruleConsumer.andThen(rule -> rows[0]++));
+            stage.setBytes(template.getContent().length);
+            stage.setRows(rows[0]);
+            stage.succeeded();
+        }
+    }
+
+    private void parseTemplate(RuleTemplate template, Consumer<Rule> ruleConsumer) throws IOException {
+        if (template.isXlsx()) {
+            // Opened from a file, the package inflates each sheet as it is read; opened from a stream it
+            // inflates every part into memory up front, and refuses parts over 100 MB
+            File templateFile = Files.createTempFile("template-", ".xlsx").toFile();
+            try {
+                Files.write(templateFile.toPath(), template.getContent());
+                try (OPCPackage pkg = OPCPackage.open(templateFile, PackageAccess.READ)) {
+                    parseXlsx(pkg, ruleConsumer);
+                } catch (InvalidFormatException e) {
+                    throw new IOException("Failed to read Excel file: " + e.getMessage(), e);
                 }
+            } finally {
+                Files.deleteIfExists(templateFile.toPath());
+            }
+        } else if (template.getFilePath().toLowerCase().endsWith(".xls")) {
+            try (Workbook workbook = new HSSFWorkbook(new ByteArrayInputStream(template.getContent()))) {
+                parseWorkbook(workbook, ruleConsumer);
+            }
+        } else {
+            throw new IOException("Unsupported file format. Only .xlsx and .xls files are supported.");
+        }
+    }
 
-                rule.setConditions(conditions);
-                rule.setActions(actions);
+    private void parseXlsx(OPCPackage pkg, Consumer<Rule> ruleConsumer) throws IOException {
+        try {
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable sharedStrings = new ReadOnlySharedStringsTable(pkg);
+            StylesTable styles = reader.getStylesTable();
 
-                if (rule.getName() == null || rule.getName().trim().isEmpty()) {
-                    rule.setName("Rule " + rule.getId());
+            // Sheets are opened one at a time, as the parser gets to them, and read as a stream
+            XSSFReader.SheetIterator sheetData = (XSSFReader.SheetIterator) reader.getSheetsData();
+            Iterator<WorkbookParser.SheetSource> sheets = new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return sheetData.hasNext();
                 }
 
-                rules.add(rule);
+                @Override
+                public WorkbookParser.SheetSource next() {
+                    InputStream sheetStream = sheetData.next();
+                    return WorkbookParser.SheetSource.xml(sheetData.getSheetName(), sheetStream);
+                }
+            };
+            new WorkbookParser(parsePool).parse(sheets, SheetXmlDecoder.Lookups.of(styles, sharedStrings), ruleConsumer);
+        } catch (OpenXML4JException | SAXException e) {
+            throw new IOException("Failed to read Excel file: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Parses a workbook already loaded into memory, as .xls files are. Reads the same rules as the
+     * streaming .xlsx path.
+     */
+    public void parseWorkbook(Workbook workbook, Consumer<Rule> ruleConsumer) throws IOException {
+        List<WorkbookParser.SheetSource> sheets = new ArrayList<>();
+        for (Sheet sheet : workbook) {
+            SheetRows rows = new SheetRows();
+            for (Row row : sheet) {
+                rows.startRow(row.getRowNum());
+                for (Cell cell : row) {
+                    if (cell.getCellType() == CellType.NUMERIC && !DateUtil.isCellDateFormatted(cell)) {
+                        rows.putNumber(cell.getColumnIndex(), cell.getNumericCellValue());
+                    } else {
+                        rows.putText(cell.getColumnIndex(), getCellValueAsString(cell));
+                    }
+                }
+                rows.endRow();
             }
+            sheets.add(WorkbookParser.SheetSource.rows(sheet.getSheetName(), rows));
+        }
+        new WorkbookParser(parsePool).parse(sheets.iterator(), null, ruleConsumer);
+    }
 
-            workbook.close();
+    public File writeRulesToExcel(List<Rule> rules, RuleTemplate template) throws IOException {
+        try (PipelineMetrics.Stage stage = metrics.stage("excel.write")) {
+            File outputFile = writeRules(rules, template);
+            stage.setBytes(outputFile.length());
+            stage.setRows(rules.size());
+            stage.succeeded();
+            return outputFile;
         }
+    }
 
-        return rules;
+    private File writeRules(List<Rule> rules, RuleTemplate template) throws IOException {
+        TemplateLayout layout = layoutOf(template);
+        rules = rules.stream().filter(layout::holds).toList();
+        if (!template.isXlsx()) {
+            return writeRulesToHssf(rules, template, layout);
+        }
+
+        File templateHead = copyTemplateHead(template);
+        try (FileInputStream fis = new FileInputStream(templateHead);
+             XSSFWorkbook workbook = new XSSFWorkbook(fis)) {
+
+            Sheet templateSheet = workbook.getSheetAt(0);
+            for (int i = templateSheet.getLastRowNum(); i >= layout.getDataStartRow(); i--) {
+                Row row = templateSheet.getRow(i);
+                if (row != null) {
+                    templateSheet.removeRow(row);
+                }
+            }
+
+            SXSSFWorkbook streamingWorkbook = new SXSSFWorkbook(workbook, STREAMING_ROW_WINDOW);
+            try {
+                Sheet sheet = streamingWorkbook.getSheetAt(0);
+                for (int i = 0; i < rules.size(); i++) {
+                    writeRuleRow(sheet.createRow(layout.getDataStartRow() + i), rules.get(i), layout);
+                }
+
+                File outputFile = Files.createTempFile("rules-", ".xlsx").toFile();
+                try (FileOutputStream fos = new FileOutputStream(outputFile)) {
+                    streamingWorkbook.write(fos);
+                }
+
+                return outputFile;
+            } finally {
+                streamingWorkbook.dispose();
+            }
+        } finally {
+            Files.deleteIfExists(templateHead.toPath());
+        }
     }
 
-    public File writeRulesToExcel(List<Rule> rules, File templateFile) throws IOException {
-        try (FileInputStream fis = new FileInputStream(templateFile);
-             Workbook workbook = templateFile.getName().endsWith(".xlsx") ? 
-                 new XSSFWorkbook(fis) : new HSSFWorkbook(fis)) {
-            
+    private File writeRulesToHssf(List<Rule> rules, RuleTemplate template, TemplateLayout layout) throws IOException {
+        try (Workbook workbook = new HSSFWorkbook(new ByteArrayInputStream(template.getContent()))) {
+
             Sheet sheet = workbook.getSheetAt(0);
-            
-            int dataStartRow = findDataStartRow(sheet);
-            if (dataStartRow == -1) {
-                throw new IOException("Could not find data start row. Excel file may not be in Drools Decision Table format.");
-            }
-            
-            for (int i = sheet.getLastRowNum(); i >= dataStartRow; i--) {
+            for (int i = sheet.getLastRowNum(); i >= layout.getDataStartRow(); i--) {
                 Row row = sheet.getRow(i);
                 if (row != null) {
                     sheet.removeRow(row);
                 }
             }
-            
-            List<String> conditionKeys = extractColumnHeaders(sheet, "CONDITION");
-            List<String> actionKeys = extractColumnHeaders(sheet, "ACTION");
-            
+
             for (int i = 0; i < rules.size(); i++) {
-                Rule rule = rules.get(i);
-                Row row = sheet.createRow(dataStartRow + i);
-                
-                Cell nameCell = row.createCell(0);
-                nameCell.setCellValue(rule.getName());
-                
-                int colIndex = 1;
-                for (String key : conditionKeys) {
-                    Object value = rule.getConditions().get(key);
-                    if (value != null) {
-                        Cell cell = row.createCell(colIndex);
-                        setCellValue(cell, value);
-                    }
-                    colIndex++;
-                }
-                
-                for (String key : actionKeys) {
-                    Object value = rule.getActions().get(key);
-                    if (value != null) {
-                        Cell cell = row.createCell(colIndex);
-                        setCellValue(cell, value);
-                    }
-                    colIndex++;
+                writeRuleRow(sheet.createRow(layout.getDataStartRow() + i), rules.get(i), layout);
+            }
+
+            File outputFile = Files.createTempFile("rules-", ".xls").toFile();
+            try (FileOutputStream fos = new FileOutputStream(outputFile)) {
+                workbook.write(fos);
+            }
+
+            return outputFile;
+        }
+    }
+
+    /**
+     * Writes the template's bytes unchanged to a temporary file.
+     */
+    public File writeTemplateCopy(RuleTemplate template) throws IOException {
+        File outputFile = Files.createTempFile("rules-", template.isXlsx() ? ".xlsx" : ".xls").toFile();
+        Files.write(outputFile.toPath(), template.getContent());
+        return outputFile;
+    }
+
+    /**
+     * Whether edits to the template may be patched in with {@link #patchRulesInExcel}, which loads the whole
+     * workbook. Larger xlsx templates are rewritten with the streaming writer instead.
+     */
+    public boolean isPatchable(RuleTemplate template) {
+        return !template.isXlsx() || template.getContent().length <= patchMaxBytes;
+    }
+
+    /**
+     * Applies edits to the template in place: changed rows are rewritten where they were read from,
+     * deleted rows are removed and the rows below shifted up, and new rules are appended. Rules read
+     * from the RuleTable blocks of other sheets are left as the template has them.
+     * Returns null when a row falls outside the data block and the table has to be rewritten instead.
+     */
+    public File patchRulesInExcel(RuleTemplate template, Map<Integer, Rule> updatedRows, Set<Integer> deletedRows,
+            List<Rule> appendedRules) throws IOException {
+        try (PipelineMetrics.Stage stage = metrics.stage("excel.patch")) {
+            File outputFile = patchRules(template, updatedRows, deletedRows, appendedRules);
+            stage.setBytes(outputFile != null ? outputFile.length() : 0);
+            stage.setRows(updatedRows.size() + deletedRows.size() + appendedRules.size());
+            stage.succeeded();
+            return outputFile;
+        }
+    }
+
+    private File patchRules(RuleTemplate template, Map<Integer, Rule> updatedRows, Set<Integer> deletedRows,
+            List<Rule> appendedRules) throws IOException {
+        TemplateLayout layout = layoutOf(template);
+        int dataStartRow = layout.getDataStartRow();
+        boolean xlsx = template.isXlsx();
+        try (InputStream in = new ByteArrayInputStream(template.getContent());
+             Workbook workbook = xlsx ? new XSSFWorkbook(in) : new HSSFWorkbook(in)) {
+
+            Sheet sheet = workbook.getSheetAt(0);
+
+            for (Integer rowIndex : updatedRows.keySet()) {
+                if (rowIndex < dataStartRow) {
+                    return null;
                 }
             }
-            
-            File outputFile = Files.createTempFile("rules-", ".xlsx").toFile();
+            for (Integer rowIndex : deletedRows) {
+                if (rowIndex < dataStartRow) {
+                    return null;
+                }
+            }
+
+            for (Map.Entry<Integer, Rule> update : updatedRows.entrySet()) {
+                Row row = sheet.getRow(update.getKey());
+                if (row == null) {
+                    row = sheet.createRow(update.getKey());
+                } else {
+                    List<Cell> oldCells = new ArrayList<>();
+                    row.forEach(oldCells::add);
+                    oldCells.forEach(row::removeCell);
+                }
+                writeRuleRow(row, update.getValue(), layout);
+            }
+
+            removeRows(sheet, deletedRows);
+
+            int nextRow = Math.max(sheet.getLastRowNum() + 1, dataStartRow);
+            for (Rule rule : appendedRules) {
+                if (!layout.holds(rule)) {
+                    continue;
+                }
+                writeRuleRow(sheet.createRow(nextRow++), rule, layout);
+            }
+
+            File outputFile = Files.createTempFile("rules-", xlsx ? ".xlsx" : ".xls").toFile();
             try (FileOutputStream fos = new FileOutputStream(outputFile)) {
                 workbook.write(fos);
             }
-            
+
             return outputFile;
         }
     }
 
+    /**
+     * Removes the rows and closes the gaps, moving every row below the first gap once: each stretch of
+     * rows between two gaps is shifted up by the number of rows removed above it.
+     */
+    private void removeRows(Sheet sheet, Set<Integer> rowIndexes) {
+        List<Integer> deletions = new ArrayList<>(rowIndexes);
+        Collections.sort(deletions);
+        for (int rowIndex : deletions) {
+            Row row = sheet.getRow(rowIndex);
+            if (row != null) {
+                sheet.removeRow(row);
+            }
+        }
+
+        int lastRow = sheet.getLastRowNum();
+        for (int i = 0; i < deletions.size(); i++) {
+            int first = deletions.get(i) + 1;
+            int last = i + 1 < deletions.size() ? deletions.get(i + 1) - 1 : lastRow;
+            if (first <= last) {
+                sheet.shiftRows(first, last, -(i + 1));
+            }
+        }
+    }
+
+    private void writeRuleRow(Row row, Rule rule, TemplateLayout layout) {
+        Cell nameCell = row.createCell(0);
+        nameCell.setCellValue(rule.getName());
+
+        int colIndex = 1;
+        for (String key : layout.getConditionKeys()) {
+            Object value = rule.getConditions().get(key);
+            if (value != null) {
+                Cell cell = row.createCell(colIndex);
+                setCellValue(cell, value);
+            }
+            colIndex++;
+        }
+
+        for (String key : layout.getActionKeys()) {
+            Object value = rule.getActions().get(key);
+            if (value != null) {
+                Cell cell = row.createCell(colIndex);
+                setCellValue(cell, value);
+            }
+            colIndex++;
+        }
+    }
+
+    /**
+     * Copies the template with its first sheet cut down to the rows that can hold the
+     * RuleSet/CONDITION/ACTION block, so only the header is ever loaded into an XSSFWorkbook.
+     */
+    private File copyTemplateHead(RuleTemplate template) throws IOException {
+        File headFile = Files.createTempFile("template-", ".xlsx").toFile();
+        Files.write(headFile.toPath(), template.getContent());
+
+        try (OPCPackage pkg = OPCPackage.open(headFile, PackageAccess.READ_WRITE)) {
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) new XSSFReader(pkg).getSheetsData();
+            ByteArrayOutputStream sheetHead = new ByteArrayOutputStream();
+            try (InputStream sheetStream = sheets.next()) {
+                copySheetRows(sheetStream, sheetHead, HEADER_SCAN_ROWS + 3);
+            }
+            try (OutputStream os = sheets.getSheetPart().getOutputStream()) {
+                sheetHead.writeTo(os);
+            }
+        } catch (OpenXML4JException | XMLStreamException e) {
+            Files.deleteIfExists(headFile.toPath());
+            throw new IOException("Failed to read Excel template: " + e.getMessage(), e);
+        }
+
+        return headFile;
+    }
+
+    private void copySheetRows(InputStream sheetXml, OutputStream out, int maxRowIndex) throws XMLStreamException {
+        XMLEventReader reader = XMLHelper.newXMLInputFactory().createXMLEventReader(sheetXml);
+        XMLEventWriter writer = XMLHelper.newXMLOutputFactory().createXMLEventWriter(out, "UTF-8");
+
+        int rowIndex = -1;
+        int skipDepth = 0;
+        while (reader.hasNext()) {
+            XMLEvent event = reader.nextEvent();
+
+            if (skipDepth > 0) {
+                if (event.isStartElement()) {
+                    skipDepth++;
+                } else if (event.isEndElement()) {
+                    skipDepth--;
+                }
+                continue;
+            }
+
+            if (event.isStartElement() && "row".equals(event.asStartElement().getName().getLocalPart())) {
+                Attribute rowRef = event.asStartElement().getAttributeByName(new QName("r"));
+                rowIndex = rowRef != null ? Integer.parseInt(rowRef.getValue()) - 1 : rowIndex + 1;
+                if (rowIndex > maxRowIndex) {
+                    skipDepth = 1;
+                    continue;
+                }
+            }
+
+            writer.add(event);
+        }
+
+        writer.flush();
+        writer.close();
+        reader.close();
+    }
+
+    /**
+     * The decision table layout of a template, read once from its header rows and kept on the template.
+     */
+    private TemplateLayout layoutOf(RuleTemplate template) throws IOException {
+        TemplateLayout layout = template.getLayout();
+        if (layout == null) {
+            layout = readLayout(template);
+            template.setLayout(layout);
+        }
+        if (layout.getDataStartRow() == -1) {
+            throw new IOException("Could not find data start row. Excel file may not be in Drools Decision Table format.");
+        }
+        return layout;
+    }
+
+    private TemplateLayout readLayout(RuleTemplate template) throws IOException {
+        if (!template.isXlsx()) {
+            try (Workbook workbook = new HSSFWorkbook(new ByteArrayInputStream(template.getContent()))) {
+                return readLayout(workbook.getSheetAt(0));
+            }
+        }
+
+        File templateHead = copyTemplateHead(template);
+        try (FileInputStream fis = new FileInputStream(templateHead);
+             XSSFWorkbook workbook = new XSSFWorkbook(fis)) {
+            return readLayout(workbook.getSheetAt(0));
+        } finally {
+            Files.deleteIfExists(templateHead.toPath());
+        }
+    }
+
+    private TemplateLayout readLayout(Sheet sheet) {
+        return new TemplateLayout(sheet.getSheetName(), findDataStartRow(sheet),
+            extractColumnHeaders(sheet, "CONDITION"), extractColumnHeaders(sheet, "ACTION"));
+    }
+
     private int findDataStartRow(Sheet sheet) {
-        for (int i = 0; i <= 20 && i <= sheet.getLastRowNum(); i++) {
+        for (int i = 0; i <= HEADER_SCAN_ROWS && i <= sheet.getLastRowNum(); i++) {
             Row row = sheet.getRow(i);
             if (row == null) continue;
             
@@ -166,7 +506,7 @@ public class ExcelService {
     private List<String> extractColumnHeaders(Sheet sheet, String headerType) {
         List<String> headers = new ArrayList<>();
         
-        for (int i = 0; i <= 20 && i <= sheet.getLastRowNum(); i++) {
+        for (int i = 0; i <= HEADER_SCAN_ROWS && i <= sheet.getLastRowNum(); i++) {
             Row row = sheet.getRow(i);
             if (row == null) continue;
             
@@ -225,4 +565,41 @@ public class ExcelService {
                 return "";
         }
     }
+
+    public static class TemplateLayout {
+        private final String sheetName;
+        private final int dataStartRow;
+        private final List<String> conditionKeys;
+        private final List<String> actionKeys;
+
+        TemplateLayout(String sheetName, int dataStartRow, List<String> conditionKeys, List<String> actionKeys) {
+            this.sheetName = sheetName;
+            this.dataStartRow = dataStartRow;
+            this.conditionKeys = conditionKeys;
+            this.actionKeys = actionKeys;
+        }
+
+        public String getSheetName() {
+            return sheetName;
+        }
+
+        /**
+         * Whether the rule belongs in the first sheet's table, which is the only one written back.
+         */
+        public boolean holds(Rule rule) {
+            return rule.getSheet() == null || rule.getSheet().equals(sheetName);
+        }
+
+        public int getDataStartRow() {
+            return dataStartRow;
+        }
+
+        public List<String> getConditionKeys() {
+            return conditionKeys;
+        }
+
+        public List<String> getActionKeys() {
+            return actionKeys;
+        }
+    }
 }
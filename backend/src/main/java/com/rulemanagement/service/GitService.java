@@ -3,116 +3,267 @@ package com.rulemanagement.service;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.rulemanagement.model.GitRepository;
+import org.eclipse.jgit.api.FetchCommand;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.api.errors.JGitInternalException;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEditor;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.client.RestTemplate;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Service
 public class GitService {
 
     private static final String TEMP_DIR = System.getProperty("java.io.tmpdir") + "/rule-management";
+    private static final String MIRROR_DIR = TEMP_DIR + "/mirrors";
 
-    public File fetchFileFromGit(GitRepository gitRepo) throws GitAPIException, IOException {
-        Path tempPath = Paths.get(TEMP_DIR);
-        if (Files.exists(tempPath)) {
-            deleteDirectory(tempPath.toFile());
+    // Explicit locks rather than synchronized, so virtual threads waiting on a mirror do not pin their carrier
+    private final Map<String, Lock> mirrorLocks = new ConcurrentHashMap<>();
+
+    // 0 fetches full history; otherwise only this many commits from the branch tip
+    @Value("${rule-management.git.fetch-depth:1}")
+    private int fetchDepth;
+
+    @Autowired
+    private PipelineMetrics metrics;
+
+    /**
+     * Fetches the branch tip into a bare local mirror and reads the rule file's blob from that commit's
+     * tree. Nothing is checked out; with a fetch depth set, only the tip commit is transferred.
+     */
+    public RuleTemplate fetchTemplate(GitRepository gitRepo) throws GitAPIException, IOException {
+        Lock mirrorLock = mirrorLockFor(gitRepo);
+        mirrorLock.lock();
+        try (Git git = syncMirror(gitRepo);
+             RevWalk revWalk = new RevWalk(git.getRepository())) {
+            Repository repository = git.getRepository();
+            ObjectId tipId = repository.resolve(remoteRefFor(gitRepo));
+            if (tipId == null) {
+                throw new IOException("Branch not found: " + gitRepo.getBranch());
+            }
+            RevCommit tip = revWalk.parseCommit(tipId);
+
+            try (TreeWalk treeWalk = TreeWalk.forPath(repository, gitRepo.getFilePath(), tip.getTree())) {
+                if (treeWalk == null) {
+                    throw new IOException("Excel file not found at path: " + gitRepo.getFilePath());
+                }
+
+                ObjectId blobId = treeWalk.getObjectId(0);
+                byte[] content;
+                try (PipelineMetrics.Stage stage = metrics.stage("git.read");
+                     InputStream blob = repository.open(blobId, Constants.OBJ_BLOB).openStream()) {
+                    content = blob.readAllBytes();
+                    stage.setBytes(content.length);
+                    stage.succeeded();
+                }
+                return new RuleTemplate(gitRepo.getFilePath(), content, tip.name(), blobId.name());
+            }
+        } finally {
+            mirrorLock.unlock();
         }
-        Files.createDirectories(tempPath);
+    }
 
-        Git git;
-        if (gitRepo.getUsername() != null && gitRepo.getToken() != null) {
-            git = Git.cloneRepository()
-                    .setURI(gitRepo.getUrl())
-                    .setDirectory(tempPath.toFile())
-                    .setBranch(gitRepo.getBranch())
-                    .setCredentialsProvider(new UsernamePasswordCredentialsProvider(
-                            gitRepo.getUsername(), gitRepo.getToken()))
-                    .call();
-        } else {
-            git = Git.cloneRepository()
-                    .setURI(gitRepo.getUrl())
-                    .setDirectory(tempPath.toFile())
-                    .setBranch(gitRepo.getBranch())
-                    .call();
+    private Git syncMirror(GitRepository gitRepo) throws GitAPIException, IOException {
+        Path mirrorPath = mirrorPathFor(gitRepo);
+
+        if (Files.exists(mirrorPath.resolve("HEAD"))) {
+            Git git = openMirror(mirrorPath);
+            if (git != null) {
+                try {
+                    fetchBranch(git, gitRepo, "git.fetch");
+                    return git;
+                } catch (JGitInternalException e) {
+                    // Mirror is corrupt or half-fetched; fall through and start it again
+                    git.close();
+                } catch (GitAPIException | RuntimeException e) {
+                    // Transport errors mean the remote could not be reached or refused us; keep the mirror
+                    git.close();
+                    throw e;
+                }
+            }
+        }
+
+        if (Files.exists(mirrorPath)) {
+            deleteDirectory(mirrorPath.toFile());
         }
+        Files.createDirectories(mirrorPath);
 
-        git.close();
+        Git git = Git.init()
+            .setBare(true)
+            .setDirectory(mirrorPath.toFile())
+            .call();
+        try {
+            fetchBranch(git, gitRepo, "git.clone");
+            return git;
+        } catch (GitAPIException | RuntimeException e) {
+            git.close();
+            throw e;
+        }
+    }
 
-        File excelFile = new File(tempPath.toFile(), gitRepo.getFilePath());
-        if (!excelFile.exists()) {
-            throw new IOException("Excel file not found at path: " + gitRepo.getFilePath());
+    /**
+     * Opens an existing mirror, or returns null when it no longer reads as a repository.
+     */
+    private Git openMirror(Path mirrorPath) {
+        try {
+            return Git.open(mirrorPath.toFile());
+        } catch (IOException e) {
+            return null;
         }
+    }
 
-        return excelFile;
+    private void fetchBranch(Git git, GitRepository gitRepo, String stageName) throws GitAPIException {
+        FetchCommand fetch = git.fetch()
+            .setRemote(gitRepo.getUrl())
+            .setRefSpecs(new RefSpec("+refs/heads/" + gitRepo.getBranch() + ":" + remoteRefFor(gitRepo)))
+            .setCredentialsProvider(credentialsFor(gitRepo));
+        if (fetchDepth > 0) {
+            fetch.setDepth(fetchDepth);
+        }
+        try (PipelineMetrics.Stage stage = metrics.stage(stageName)) {
+            long packBytes = packBytes(git.getRepository());
+            fetch.call();
+            stage.setBytes(Math.max(0, packBytes(git.getRepository()) - packBytes));
+            stage.succeeded();
+        }
     }
 
-    public String createBranchAndPush(GitRepository gitRepo, File excelFile, String branchName, String commitMessage) 
-            throws GitAPIException, IOException {
-        
-        Path tempPath = Paths.get(TEMP_DIR + "_push");
-        if (Files.exists(tempPath)) {
-            deleteDirectory(tempPath.toFile());
+    /**
+     * Size of the mirror's pack files, which is where fetched objects end up.
+     */
+    private long packBytes(Repository repository) {
+        File packDir = new File(repository.getDirectory(), "objects/pack");
+        File[] packs = packDir.listFiles((dir, name) -> name.endsWith(".pack"));
+        long bytes = 0;
+        if (packs != null) {
+            for (File pack : packs) {
+                bytes += pack.length();
+            }
         }
-        Files.createDirectories(tempPath);
-        
-        Git git;
-        UsernamePasswordCredentialsProvider credentials = null;
+        return bytes;
+    }
+
+    private String remoteRefFor(GitRepository gitRepo) {
+        return "refs/remotes/origin/" + gitRepo.getBranch();
+    }
+
+    private Path mirrorPathFor(GitRepository gitRepo) {
+        return Paths.get(MIRROR_DIR, mirrorKeyFor(gitRepo) + ".git");
+    }
+
+    private Lock mirrorLockFor(GitRepository gitRepo) {
+        return mirrorLocks.computeIfAbsent(mirrorKeyFor(gitRepo), k -> new ReentrantLock());
+    }
+
+    private String mirrorKeyFor(GitRepository gitRepo) {
+        return DigestUtils.md5DigestAsHex(
+            (gitRepo.getUrl() + "#" + gitRepo.getBranch()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private UsernamePasswordCredentialsProvider credentialsFor(GitRepository gitRepo) {
         if (gitRepo.getUsername() != null && gitRepo.getToken() != null) {
-            credentials = new UsernamePasswordCredentialsProvider(
-                gitRepo.getUsername(), gitRepo.getToken()
-            );
-            git = Git.cloneRepository()
-                .setURI(gitRepo.getUrl())
-                .setDirectory(tempPath.toFile())
-                .setBranch(gitRepo.getBranch())
-                .setCredentialsProvider(credentials)
-                .call();
-        } else {
-            git = Git.cloneRepository()
-                .setURI(gitRepo.getUrl())
-                .setDirectory(tempPath.toFile())
-                .setBranch(gitRepo.getBranch())
+            return new UsernamePasswordCredentialsProvider(gitRepo.getUsername(), gitRepo.getToken());
+        }
+        return null;
+    }
+
+    /**
+     * Pushes a new branch whose single commit, on top of the commit the template was read from, replaces
+     * the rule file. The blob, trees and commit are written straight into the object database of the local
+     * mirror, so no working tree is ever needed. The mirror is synced first, which clones it again when it
+     * has been removed since the fetch.
+     */
+    public String createBranchAndPush(GitRepository gitRepo, String baseCommitId, File excelFile,
+            String branchName, String commitMessage) throws GitAPIException, IOException {
+        Lock mirrorLock = mirrorLockFor(gitRepo);
+        mirrorLock.lock();
+        try (Git git = syncMirror(gitRepo);
+             PipelineMetrics.Stage stage = metrics.stage("git.push");
+             ObjectInserter inserter = git.getRepository().newObjectInserter();
+             ObjectReader reader = git.getRepository().newObjectReader();
+             RevWalk revWalk = new RevWalk(reader)) {
+            Repository repository = git.getRepository();
+
+            ObjectId baseId = repository.resolve(baseCommitId + "^{commit}");
+            if (baseId == null) {
+                throw new IOException("Commit " + baseCommitId + " is no longer in the local mirror. "
+                    + "Please fetch rules from Git again.");
+            }
+            RevCommit base = revWalk.parseCommit(baseId);
+
+            ObjectId blobId;
+            long fileBytes = Files.size(excelFile.toPath());
+            try (InputStream content = Files.newInputStream(excelFile.toPath())) {
+                blobId = inserter.insert(Constants.OBJ_BLOB, fileBytes, content);
+            }
+            stage.setBytes(fileBytes);
+
+            DirCache index = DirCache.read(reader, base.getTree());
+            DirCacheEditor editor = index.editor();
+            editor.add(new DirCacheEditor.PathEdit(gitRepo.getFilePath()) {
+                @Override
+                public void apply(DirCacheEntry entry) {
+                    entry.setFileMode(FileMode.REGULAR_FILE);
+                    entry.setObjectId(blobId);
+                }
+            });
+            editor.finish();
+
+            PersonIdent author = new PersonIdent(repository);
+            CommitBuilder commit = new CommitBuilder();
+            commit.setTreeId(index.writeTree(inserter));
+            commit.setParentId(base);
+            commit.setAuthor(author);
+            commit.setCommitter(author);
+            commit.setMessage(commitMessage);
+            ObjectId commitId = inserter.insert(commit);
+            inserter.flush();
+
+            git.push()
+                .setCredentialsProvider(credentialsFor(gitRepo))
+                .setRemote(gitRepo.getUrl())
+                .setRefSpecs(new RefSpec(commitId.name() + ":refs/heads/" + branchName))
                 .call();
+
+            stage.succeeded();
+            return branchName;
+        } finally {
+            mirrorLock.unlock();
         }
-        
-        git.checkout()
-            .setCreateBranch(true)
-            .setName(branchName)
-            .call();
-        
-        Path targetPath = tempPath.resolve(gitRepo.getFilePath());
-        Files.copy(excelFile.toPath(), targetPath, StandardCopyOption.REPLACE_EXISTING);
-        
-        git.add()
-            .addFilepattern(gitRepo.getFilePath())
-            .call();
-        
-        git.commit()
-            .setMessage(commitMessage)
-            .call();
-        
-        git.push()
-            .setCredentialsProvider(credentials)
-            .setRemote("origin")
-            .call();
-        
-        git.close();
-        deleteDirectory(tempPath.toFile());
-        
-        return branchName;
     }
 
     public String createPullRequest(GitRepository gitRepo, String branchName, 
@@ -137,13 +288,16 @@ public class GitService {
         
         HttpEntity<String> entity = new HttpEntity<>(requestBody, headers);
         
-        try {
+        try (PipelineMetrics.Stage stage = metrics.stage("github.pr")) {
+            stage.setBytes(requestBody.length());
             ResponseEntity<String> response = restTemplate.exchange(
                 apiUrl, HttpMethod.POST, entity, String.class
             );
             
             JsonNode jsonResponse = mapper.readTree(response.getBody());
-            return jsonResponse.get("html_url").asText();
+            String prUrl = jsonResponse.get("html_url").asText();
+            stage.succeeded();
+            return prUrl;
         } catch (Exception e) {
             throw new IOException("Failed to create pull request: " + e.getMessage(), e);
         }
@@ -0,0 +1,349 @@
+package com.rulemanagement.service;
+
+import com.rulemanagement.model.GitRepository;
+import com.rulemanagement.model.Job;
+import com.rulemanagement.model.Job.JobStatus;
+import com.rulemanagement.model.Job.JobType;
+import com.rulemanagement.model.PullRequestRequest;
+import com.rulemanagement.model.ValidationResult;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs save, validate and pull request work off the request threads. Each job is a chain of stages;
+ * Git and GitHub stages run on the I/O pool and workbook stages on the compute pool, so the stages of
+ * different jobs overlap. Identical submissions made while a job is still in progress share that job.
+ */
+@Service
+public class JobService {
+
+    @Autowired
+    private RuleService ruleService;
+
+    @Autowired
+    private GitService gitService;
+
+    @Autowired
+    private ValidationService validationService;
+
+    @Autowired
+    private RequestTracer tracer;
+
+    @Value("${rule-management.jobs.io-threads:4}")
+    private int ioThreads;
+
+    @Value("${rule-management.jobs.compute-threads:2}")
+    private int computeThreads;
+
+    @Value("${rule-management.virtual-threads.enabled:false}")
+    private boolean virtualThreads;
+
+    @Value("${rule-management.jobs.max-pending:64}")
+    private int maxPendingJobs;
+
+    @Value("${rule-management.jobs.max-retained:256}")
+    private int maxRetainedJobs;
+
+    private ExecutorService ioExecutor;
+    private ExecutorService computeExecutor;
+    // Caps queued plus running jobs, which also bounds the stage queues of both pools
+    private Semaphore admissions;
+
+    private final LinkedHashMap<String, JobHandle> jobs = new LinkedHashMap<>();
+    private final Map<String, JobHandle> activeJobs = new HashMap<>();
+
+    @PostConstruct
+    void startExecutors() {
+        // Git and GitHub stages only block on the network, so in virtual thread mode each gets its own
+        ioExecutor = virtualThreads ?
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("job-io-", 1).factory()) :
+            Executors.newFixedThreadPool(ioThreads, new CustomizableThreadFactory("job-io-"));
+        computeExecutor = Executors.newFixedThreadPool(computeThreads, new CustomizableThreadFactory("job-compute-"));
+        admissions = new Semaphore(maxPendingJobs);
+    }
+
+    @PreDestroy
+    void stopExecutors() {
+        ioExecutor.shutdownNow();
+        computeExecutor.shutdownNow();
+    }
+
+    public Job submitSave(RuleWorkspace workspace, PullRequestRequest request) {
+        String key = JobType.SAVE_TO_GIT + "#" + workspace.getId() + "#" + workspace.getRulesVersion()
+            + "#" + request.getBranchName();
+        GitRepository gitRepo = pushTargetFor(workspace, request.getGitRepo());
+
+        return submit(JobType.SAVE_TO_GIT, key, List.of(
+            new Stage("write", computeExecutor,
+                files -> files.excelFile = ruleService.writePendingChanges(workspace)),
+            new Stage("validate", computeExecutor, files -> {
+                files.validation = validationService.validateDroolsFormat(files.excelFile);
+                if (!files.validation.isValid()) {
+                    Map<String, Object> errorResponse = new HashMap<>();
+                    errorResponse.put("valid", false);
+                    errorResponse.put("errors", files.validation.getErrors());
+                    errorResponse.put("warnings", files.validation.getWarnings());
+                    throw new JobFailedException("Validation failed", errorResponse);
+                }
+            }),
+            new Stage("push", ioExecutor, files -> {
+                long timestamp = System.currentTimeMillis() / 1000;
+                String branchName = request.getBranchName() != null ?
+                    request.getBranchName() :
+                    "devin/" + timestamp + "-rules-update";
+
+                String pushedBranch = gitService.createBranchAndPush(
+                    gitRepo,
+                    workspace.getTemplate().getCommitId(),
+                    files.excelFile,
+                    branchName,
+                    request.getCommitMessage() != null ?
+                        request.getCommitMessage() :
+                        "Update decision table rules"
+                );
+
+                Map<String, Object> response = new HashMap<>();
+                response.put("message", "Successfully pushed to branch");
+                response.put("branch", pushedBranch);
+                response.put("warnings", files.validation.getWarnings());
+                files.result = response;
+            })));
+    }
+
+    /**
+     * The repository, branch and file the workspace was fetched from, with the credentials of the request
+     * when it carries any. The request never redirects the push elsewhere.
+     */
+    private GitRepository pushTargetFor(RuleWorkspace workspace, GitRepository credentials) {
+        GitRepository fetched = workspace.getGitRepo();
+        GitRepository target = new GitRepository();
+        target.setUrl(fetched.getUrl());
+        target.setBranch(fetched.getBranch());
+        target.setFilePath(fetched.getFilePath());
+        target.setUsername(fetched.getUsername());
+        target.setToken(fetched.getToken());
+        if (credentials != null) {
+            if (credentials.getUsername() != null) {
+                target.setUsername(credentials.getUsername());
+            }
+            if (credentials.getToken() != null) {
+                target.setToken(credentials.getToken());
+            }
+        }
+        return target;
+    }
+
+    public Job submitValidate(RuleWorkspace workspace) {
+        String key = JobType.VALIDATE + "#" + workspace.getId() + "#" + workspace.getRulesVersion();
+
+        return submit(JobType.VALIDATE, key, List.of(
+            new Stage("write", computeExecutor,
+                files -> files.excelFile = ruleService.writePendingChanges(workspace)),
+            new Stage("validate", computeExecutor,
+                files -> files.result = validationService.validateDroolsFormat(files.excelFile))));
+    }
+
+    public Job submitPullRequest(PullRequestRequest request) {
+        GitRepository gitRepo = request.getGitRepo();
+        String key = JobType.CREATE_PR + "#" + gitRepo.getUrl() + "#" + gitRepo.getBranch()
+            + "#" + request.getBranchName();
+
+        return submit(JobType.CREATE_PR, key, List.of(
+            new Stage("pr", ioExecutor, files -> {
+                String prUrl = gitService.createPullRequest(
+                    gitRepo,
+                    request.getBranchName(),
+                    request.getTitle(),
+                    request.getDescription() != null ? request.getDescription() : ""
+                );
+
+                Map<String, String> response = new HashMap<>();
+                response.put("message", "Pull request created successfully");
+                response.put("prUrl", prUrl);
+                files.result = response;
+            })));
+    }
+
+    public Job getJob(String jobId) {
+        synchronized (jobs) {
+            JobHandle handle = jobs.get(jobId);
+            return handle != null ? handle.job : null;
+        }
+    }
+
+    /**
+     * Completes with the job once it has succeeded or failed.
+     */
+    public CompletableFuture<Job> whenFinished(Job job) {
+        synchronized (jobs) {
+            JobHandle handle = jobs.get(job.getId());
+            return handle != null ? handle.finished : CompletableFuture.completedFuture(job);
+        }
+    }
+
+    private Job submit(JobType type, String coalesceKey, List<Stage> stages) {
+        JobHandle handle;
+        synchronized (jobs) {
+            JobHandle running = activeJobs.get(coalesceKey);
+            if (running != null) {
+                return running.job;
+            }
+            if (!admissions.tryAcquire()) {
+                throw new RejectedExecutionException("Too many jobs in progress, please try again later");
+            }
+
+            Job job = new Job(UUID.randomUUID().toString(), type, stages.size());
+            RequestTrace trace;
+            try {
+                trace = tracer.start(type.name().toLowerCase().replace('_', '-'), "job " + job.getId());
+            } catch (RuntimeException e) {
+                admissions.release();
+                throw e;
+            }
+            handle = new JobHandle(job, coalesceKey, trace);
+            jobs.put(handle.job.getId(), handle);
+            activeJobs.put(coalesceKey, handle);
+            evictFinishedJobs();
+        }
+
+        try {
+            CompletableFuture<Void> pipeline = CompletableFuture.completedFuture(null);
+            for (Stage stage : stages) {
+                pipeline = pipeline.thenRunAsync(() -> runStage(handle, stage), stage.executor);
+            }
+            pipeline.whenComplete((ignored, failure) -> finish(handle, failure));
+        } catch (RuntimeException e) {
+            finish(handle, e);
+            throw e;
+        }
+        return handle.job;
+    }
+
+    private void runStage(JobHandle handle, Stage stage) {
+        Job job = handle.job;
+        job.setStatus(JobStatus.RUNNING);
+        job.setStage(stage.name);
+        try (RequestTrace.Scope scope = handle.trace.attach()) {
+            stage.action.run(handle.files);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+        job.setCompletedStages(job.getCompletedStages() + 1);
+    }
+
+    private void finish(JobHandle handle, Throwable failure) {
+        Job job = handle.job;
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null ?
+            failure.getCause() : failure;
+
+        if (cause == null) {
+            job.setResult(handle.files.result);
+            job.setStatus(JobStatus.SUCCEEDED);
+        } else {
+            if (cause instanceof JobFailedException) {
+                job.setResult(((JobFailedException) cause).getResult());
+            }
+            job.setError(cause.getMessage());
+            job.setStatus(JobStatus.FAILED);
+        }
+        job.setFinishedAt(System.currentTimeMillis());
+
+        // The job is let go of even when cleaning up or reporting its trace fails
+        try {
+            deleteWorkingCopy(handle.files);
+            tracer.finish(handle.trace);
+        } finally {
+            synchronized (jobs) {
+                activeJobs.remove(handle.coalesceKey, handle);
+            }
+            admissions.release();
+            handle.finished.complete(job);
+        }
+    }
+
+    private void deleteWorkingCopy(StageFiles files) {
+        if (files.excelFile != null) {
+            try {
+                Files.deleteIfExists(files.excelFile.toPath());
+            } catch (Exception e) {
+                // Temp files are best effort
+            }
+        }
+    }
+
+    private void evictFinishedJobs() {
+        Iterator<JobHandle> oldestFirst = jobs.values().iterator();
+        while (jobs.size() > maxRetainedJobs && oldestFirst.hasNext()) {
+            if (oldestFirst.next().job.isFinished()) {
+                oldestFirst.remove();
+            }
+        }
+    }
+
+    private interface StageAction {
+        void run(StageFiles files) throws Exception;
+    }
+
+    private static class Stage {
+        private final String name;
+        private final ExecutorService executor;
+        private final StageAction action;
+
+        Stage(String name, ExecutorService executor, StageAction action) {
+            this.name = name;
+            this.executor = executor;
+            this.action = action;
+        }
+    }
+
+    /** State handed from one stage of a job to the next. */
+    private static class StageFiles {
+        private File excelFile;
+        private ValidationResult validation;
+        private Object result;
+    }
+
+    private static class JobHandle {
+        private final Job job;
+        private final String coalesceKey;
+        // Spans every stage of the job, from submission to the last stage finishing
+        private final RequestTrace trace;
+        private final StageFiles files = new StageFiles();
+        private final CompletableFuture<Job> finished = new CompletableFuture<>();
+
+        JobHandle(Job job, String coalesceKey, RequestTrace trace) {
+            this.job = job;
+            this.coalesceKey = coalesceKey;
+            this.trace = trace;
+        }
+    }
+
+    private static class JobFailedException extends RuntimeException {
+        private final Object result;
+
+        JobFailedException(String message, Object result) {
+            super(message);
+            this.result = result;
+        }
+
+        Object getResult() {
+            return result;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.rulemanagement.service;
+
+import com.rulemanagement.model.Rule;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Parsed rule sets keyed by the Git blob id of the workbook and the parser version, so refetching an
+ * unchanged table skips POI entirely. Entries are held encoded, in memory and in a directory on disk,
+ * each bounded by bytes with the least recently used entries evicted first.
+ */
+@Service
+public class ParseCache {
+
+    @Value("${rule-management.parse-cache.max-memory-bytes:67108864}")
+    private long maxMemoryBytes;
+
+    @Value("${rule-management.parse-cache.max-disk-bytes:268435456}")
+    private long maxDiskBytes;
+
+    @Value("${rule-management.parse-cache.dir:${java.io.tmpdir}/rule-management/parse-cache}")
+    private String cacheDir;
+
+    @Autowired
+    private PipelineMetrics metrics;
+
+    private PipelineMetrics.CacheCounter cacheCounter;
+
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+
+    @PostConstruct
+    void registerMetrics() {
+        cacheCounter = metrics.cache("parse");
+    }
+
+    /**
+     * Returns a fresh copy of the rules parsed from this template, or null when it has not been parsed.
+     */
+    public List<Rule> get(RuleTemplate template) {
+        String key = keyFor(template);
+        if (key == null) {
+            return null;
+        }
+
+        byte[] encoded;
+        synchronized (memory) {
+            encoded = memory.get(key);
+        }
+        if (encoded == null) {
+            encoded = readSnapshot(key);
+            if (encoded == null) {
+                cacheCounter.miss();
+                return null;
+            }
+            remember(key, encoded);
+        }
+
+        try {
+            List<Rule> rules = RuleCodec.decode(encoded);
+            cacheCounter.hit();
+            return rules;
+        } catch (IOException e) {
+            // Unreadable entry; drop it and parse again
+            forget(key);
+            cacheCounter.miss();
+            return null;
+        }
+    }
+
+    public void put(RuleTemplate template, List<Rule> rules) {
+        String key = keyFor(template);
+        if (key == null) {
+            return;
+        }
+
+        try {
+            byte[] encoded = RuleCodec.encode(rules);
+            remember(key, encoded);
+            writeSnapshot(key, encoded);
+        } catch (IOException e) {
+            // Caching is best effort; the rules were parsed either way
+        }
+    }
+
+    private String keyFor(RuleTemplate template) {
+        if (template.getBlobId() == null) {
+            return null;
+        }
+        return template.getBlobId() + (template.isXlsx() ? "-xlsx" : "-xls") + "-v" + ExcelService.PARSER_VERSION;
+    }
+
+    private void remember(String key, byte[] encoded) {
+        if (encoded.length > maxMemoryBytes) {
+            return;
+        }
+        synchronized (memory) {
+            byte[] previous = memory.put(key, encoded);
+            memoryBytes += encoded.length - (previous != null ? previous.length : 0);
+
+            Iterator<byte[]> eldestFirst = memory.values().iterator();
+            while (memoryBytes > maxMemoryBytes && eldestFirst.hasNext()) {
+                memoryBytes -= eldestFirst.next().length;
+                eldestFirst.remove();
+            }
+        }
+    }
+
+    private void forget(String key) {
+        synchronized (memory) {
+            byte[] previous = memory.remove(key);
+            if (previous != null) {
+                memoryBytes -= previous.length;
+            }
+        }
+        try {
+            Files.deleteIfExists(snapshotPath(key));
+        } catch (IOException e) {
+            // Left for eviction
+        }
+    }
+
+    private byte[] readSnapshot(String key) {
+        Path snapshot = snapshotPath(key);
+        try {
+            byte[] encoded = Files.readAllBytes(snapshot);
+            // Touch the snapshot so disk eviction sees it as recently used
+            snapshot.toFile().setLastModified(System.currentTimeMillis());
+            return encoded;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void writeSnapshot(String key, byte[] encoded) throws IOException {
+        if (encoded.length > maxDiskBytes) {
+            return;
+        }
+        Path dir = Paths.get(cacheDir);
+        Files.createDirectories(dir);
+
+        Path partial = Files.createTempFile(dir, key, ".tmp");
+        Files.write(partial, encoded);
+        Files.move(partial, snapshotPath(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        evictSnapshots(dir);
+    }
+
+    private void evictSnapshots(Path dir) {
+        File[] snapshots = dir.toFile().listFiles((d, name) -> name.endsWith(".bin"));
+        if (snapshots == null) {
+            return;
+        }
+
+        long diskBytes = 0;
+        for (File snapshot : snapshots) {
+            diskBytes += snapshot.length();
+        }
+
+        Arrays.sort(snapshots, Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i < snapshots.length && diskBytes > maxDiskBytes; i++) {
+            diskBytes -= snapshots[i].length();
+            snapshots[i].delete();
+        }
+    }
+
+    private Path snapshotPath(String key) {
+        return Paths.get(cacheDir, key + ".bin");
+    }
+}
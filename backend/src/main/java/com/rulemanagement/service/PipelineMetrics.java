@@ -0,0 +1,128 @@
+package com.rulemanagement.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Timers for the stages of the rule pipeline (Git, Excel, Drools, GitHub) and hit counters for its
+ * caches, published through Actuator as {@code rule.pipeline.stage} and {@code rule.cache.*}. Stages
+ * run for a traced request are also added to its {@link RequestTrace}.
+ */
+@Service
+public class PipelineMetrics {
+
+    public static final String STAGE_TIMER = "rule.pipeline.stage";
+
+    @Autowired
+    private MeterRegistry registry;
+
+    /**
+     * Starts timing a stage on the calling thread. The time is recorded when the stage is closed, as an
+     * error unless {@link Stage#succeeded()} was called first.
+     */
+    public Stage stage(String name) {
+        return new Stage(name);
+    }
+
+    public CacheCounter cache(String name) {
+        CacheCounter counter = new CacheCounter();
+        FunctionCounter.builder("rule.cache.requests", counter, c -> c.hits.sum())
+            .tag("cache", name)
+            .tag("result", "hit")
+            .register(registry);
+        FunctionCounter.builder("rule.cache.requests", counter, c -> c.misses.sum())
+            .tag("cache", name)
+            .tag("result", "miss")
+            .register(registry);
+        Gauge.builder("rule.cache.hit.ratio", counter, CacheCounter::hitRatio)
+            .tag("cache", name)
+            .register(registry);
+        return counter;
+    }
+
+    public <T> void gauge(String name, String description, T owner, ToDoubleFunction<T> value) {
+        Gauge.builder(name, owner, value)
+            .description(description)
+            .register(registry);
+    }
+
+    public class Stage implements AutoCloseable {
+        private final String name;
+        private final RequestTrace trace = RequestTrace.current();
+        private final PipelineStageEvent event = new PipelineStageEvent();
+        private final long startNanos;
+        private long bytes;
+        private long rows;
+        private boolean succeeded;
+
+        Stage(String name) {
+            this.name = name;
+            event.begin();
+            this.startNanos = System.nanoTime();
+        }
+
+        public void setBytes(long bytes) {
+            this.bytes = bytes;
+        }
+
+        public void setRows(long rows) {
+            this.rows = rows;
+        }
+
+        public void succeeded() {
+            succeeded = true;
+        }
+
+        @Override
+        public void close() {
+            long durationNanos = System.nanoTime() - startNanos;
+            event.end();
+            Timer.builder(STAGE_TIMER)
+                .tag("stage", name)
+                .tag("outcome", succeeded ? "success" : "error")
+                .register(registry)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+
+            event.stage = name;
+            event.threadName = Thread.currentThread().getName();
+            event.bytes = bytes;
+            event.rows = rows;
+            event.succeeded = succeeded;
+            if (trace == null) {
+                event.commit();
+                return;
+            }
+            event.traceId = trace.getId();
+            event.operation = trace.getOperation();
+            trace.addSpan(new RequestTrace.Span(name, startNanos - trace.getStartNanos(), durationNanos,
+                bytes, rows, succeeded, event));
+        }
+    }
+
+    public static class CacheCounter {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+
+        public void hit() {
+            hits.increment();
+        }
+
+        public void miss() {
+            misses.increment();
+        }
+
+        double hitRatio() {
+            long hitCount = hits.sum();
+            long total = hitCount + misses.sum();
+            return total > 0 ? (double) hitCount / total : Double.NaN;
+        }
+    }
+}
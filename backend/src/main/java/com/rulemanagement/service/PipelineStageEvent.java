@@ -0,0 +1,43 @@
+package com.rulemanagement.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for one stage of the rule pipeline: a Git transfer, an Excel parse or write,
+ * a Drools compile or a GitHub call.
+ */
+@Name("com.rulemanagement.PipelineStage")
+@Label("Rule Pipeline Stage")
+@Category("Rule Management")
+@Description("A Git, Excel, Drools or GitHub stage of a rule request")
+@StackTrace(false)
+class PipelineStageEvent extends Event {
+
+    @Label("Trace Id")
+    String traceId;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Thread")
+    String threadName;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Rows")
+    long rows;
+
+    @Label("Succeeded")
+    boolean succeeded;
+}
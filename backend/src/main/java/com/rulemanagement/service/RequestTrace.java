@@ -0,0 +1,152 @@
+package com.rulemanagement.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The stages one fetch, validate or save request went through, with their timing and the bytes and rows
+ * each handled. A trace is attached to whichever thread is working on the request at the time, so
+ * stages run on job threads land in the trace of the request that submitted the job.
+ */
+public class RequestTrace {
+
+    private static final ThreadLocal<RequestTrace> CURRENT = new ThreadLocal<>();
+
+    private final String id = UUID.randomUUID().toString().substring(0, 8);
+    private final String operation;
+    private final String subject;
+    private final long startNanos = System.nanoTime();
+    private final SlowOperationEvent event = new SlowOperationEvent();
+    private final List<Span> spans = new ArrayList<>();
+    private boolean finished;
+
+    RequestTrace(String operation, String subject) {
+        this.operation = operation;
+        this.subject = subject;
+        event.begin();
+    }
+
+    /**
+     * The trace attached to the calling thread, or null when it is not working on a traced request.
+     */
+    static RequestTrace current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Attaches the trace to the calling thread until the returned scope is closed.
+     */
+    public Scope attach() {
+        RequestTrace previous = CURRENT.get();
+        CURRENT.set(this);
+        return () -> {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        };
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    long getStartNanos() {
+        return startNanos;
+    }
+
+    SlowOperationEvent getEvent() {
+        return event;
+    }
+
+    void addSpan(Span span) {
+        synchronized (spans) {
+            spans.add(span);
+        }
+    }
+
+    public List<Span> getSpans() {
+        synchronized (spans) {
+            return new ArrayList<>(spans);
+        }
+    }
+
+    /**
+     * Marks the trace finished; true only for the first call, so a trace is reported once.
+     */
+    synchronized boolean markFinished() {
+        if (finished) {
+            return false;
+        }
+        finished = true;
+        return true;
+    }
+
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * One stage of a request. Its flight recorder event is held back until the request finishes, and
+     * only recorded when the request turns out to be slow.
+     */
+    public static class Span {
+        private final String stage;
+        private final long offsetNanos;
+        private final long durationNanos;
+        private final long bytes;
+        private final long rows;
+        private final boolean succeeded;
+        private final PipelineStageEvent event;
+
+        Span(String stage, long offsetNanos, long durationNanos, long bytes, long rows, boolean succeeded,
+                PipelineStageEvent event) {
+            this.stage = stage;
+            this.offsetNanos = offsetNanos;
+            this.durationNanos = durationNanos;
+            this.bytes = bytes;
+            this.rows = rows;
+            this.succeeded = succeeded;
+            this.event = event;
+        }
+
+        public String getStage() {
+            return stage;
+        }
+
+        public long getOffsetNanos() {
+            return offsetNanos;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public boolean isSucceeded() {
+            return succeeded;
+        }
+
+        PipelineStageEvent getEvent() {
+            return event;
+        }
+    }
+}
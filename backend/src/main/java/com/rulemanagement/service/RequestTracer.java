@@ -0,0 +1,70 @@
+package com.rulemanagement.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts and finishes request traces. A request slower than the threshold is written to the slow
+ * operation log with every stage it went through, and recorded as flight recorder events.
+ */
+@Service
+public class RequestTracer {
+
+    private static final Logger slowLog = LoggerFactory.getLogger("com.rulemanagement.slow-operations");
+
+    @Value("${rule-management.tracing.slow-threshold-ms:5000}")
+    private long slowThresholdMs;
+
+    public RequestTrace start(String operation, String subject) {
+        return new RequestTrace(operation, subject);
+    }
+
+    public void finish(RequestTrace trace) {
+        if (!trace.markFinished()) {
+            return;
+        }
+        long elapsedNanos = System.nanoTime() - trace.getStartNanos();
+        if (elapsedNanos < TimeUnit.MILLISECONDS.toNanos(slowThresholdMs)) {
+            return;
+        }
+
+        List<RequestTrace.Span> spans = trace.getSpans();
+        String stages = describe(spans);
+        slowLog.warn("Slow {} of {} took {} ms [trace {}]: {}", trace.getOperation(), trace.getSubject(),
+            TimeUnit.NANOSECONDS.toMillis(elapsedNanos), trace.getId(), stages);
+
+        for (RequestTrace.Span span : spans) {
+            span.getEvent().commit();
+        }
+        SlowOperationEvent event = trace.getEvent();
+        event.end();
+        event.traceId = trace.getId();
+        event.operation = trace.getOperation();
+        event.subject = trace.getSubject();
+        event.stages = stages;
+        event.commit();
+    }
+
+    private String describe(List<RequestTrace.Span> spans) {
+        if (spans.isEmpty()) {
+            return "no stages";
+        }
+        StringBuilder text = new StringBuilder();
+        for (RequestTrace.Span span : spans) {
+            if (text.length() > 0) {
+                text.append("; ");
+            }
+            text.append(span.getStage())
+                .append(" at +").append(TimeUnit.NANOSECONDS.toMillis(span.getOffsetNanos())).append(" ms")
+                .append(" took ").append(TimeUnit.NANOSECONDS.toMillis(span.getDurationNanos())).append(" ms")
+                .append(" (").append(span.getBytes()).append(" bytes, ").append(span.getRows()).append(" rows")
+                .append(span.isSucceeded() ? ")" : ", failed)");
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,209 @@
+package com.rulemanagement.service;
+
+import com.rulemanagement.model.Rule;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of rules, used wherever parsed rule sets are kept outside the heap.
+ */
+final class RuleCodec {
+
+    private static final int MAGIC = 0x52554c45;
+    // Format 1 rules carry no sheet or table
+    static final int FORMAT_VERSION = 2;
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte LONG = 2;
+    private static final byte DOUBLE = 3;
+    private static final byte BOOLEAN = 4;
+
+    private RuleCodec() {
+    }
+
+    static byte[] encode(List<Rule> rules) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(256, rules.size() * 64));
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(rules.size());
+            for (Rule rule : rules) {
+                writeRule(out, rule);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    static List<Rule> decode(byte[] encoded) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a rule snapshot");
+            }
+            int format = in.readInt();
+            if (format < 1 || format > FORMAT_VERSION) {
+                throw new IOException("Rule snapshot written by an incompatible version");
+            }
+            return readRules(in, format);
+        }
+    }
+
+    /**
+     * Reads a counted run of rules into one shared {@link RuleTable}.
+     */
+    static List<Rule> readRules(DataInput in, int format) throws IOException {
+        int count = in.readInt();
+        RuleTable table = new RuleTable();
+        List<Rule> rules = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            rules.add(readRule(in, format, table));
+        }
+        return rules;
+    }
+
+    static void writeRule(DataOutput out, Rule rule) throws IOException {
+        out.writeLong(rule.getId() != null ? rule.getId() : -1);
+        out.writeLong(rule.getVersion());
+        out.writeInt(rule.getSourceRow() != null ? rule.getSourceRow() : -1);
+        out.writeBoolean(rule.isActive());
+        writeString(out, rule.getName());
+        writeString(out, rule.getDescription());
+        writeString(out, rule.getSheet());
+        writeString(out, rule.getTable());
+        writeValues(out, rule.getConditions());
+        writeValues(out, rule.getActions());
+    }
+
+    static Rule readRule(DataInput in, int format) throws IOException {
+        return readRule(in, format, null);
+    }
+
+    /**
+     * Reads one rule written in the given format, as a row of {@code table} when one is given or with its
+     * own maps otherwise.
+     */
+    static Rule readRule(DataInput in, int format, RuleTable table) throws IOException {
+        Rule rule = table != null ? table.addRow() : new Rule();
+        long id = in.readLong();
+        rule.setId(id != -1 ? id : null);
+        rule.setVersion(in.readLong());
+        int sourceRow = in.readInt();
+        rule.setSourceRow(sourceRow != -1 ? sourceRow : null);
+        rule.setActive(in.readBoolean());
+        if (table == null) {
+            rule.setName(readString(in));
+            rule.setDescription(readString(in));
+            if (format >= 2) {
+                rule.setSheet(readString(in));
+                rule.setTable(readString(in));
+            }
+            rule.setConditions(readValues(in));
+            rule.setActions(readValues(in));
+            return rule;
+        }
+
+        rule.setName(table.intern(readString(in)));
+        rule.setDescription(table.intern(readString(in)));
+        if (format >= 2) {
+            rule.setSheet(table.intern(readString(in)));
+            rule.setTable(table.intern(readString(in)));
+        }
+        int conditionCount = in.readInt();
+        for (int i = 0; i < conditionCount; i++) {
+            table.setCondition(rule, readString(in), readValue(in));
+        }
+        int actionCount = in.readInt();
+        for (int i = 0; i < actionCount; i++) {
+            table.setAction(rule, readString(in), readValue(in));
+        }
+        return rule;
+    }
+
+    private static void writeValues(DataOutput out, Map<String, Object> values) throws IOException {
+        if (values == null) {
+            out.writeInt(0);
+            return;
+        }
+        out.writeInt(values.size());
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            writeString(out, entry.getKey());
+            writeValue(out, entry.getValue());
+        }
+    }
+
+    private static Map<String, Object> readValues(DataInput in) throws IOException {
+        int size = in.readInt();
+        Map<String, Object> values = new HashMap<>(Math.max(4, size * 2));
+        for (int i = 0; i < size; i++) {
+            values.put(readString(in), readValue(in));
+        }
+        return values;
+    }
+
+    private static void writeValue(DataOutput out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short) {
+            out.writeByte(LONG);
+            out.writeLong(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else {
+            out.writeByte(STRING);
+            writeString(out, value.toString());
+        }
+    }
+
+    private static Object readValue(DataInput in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case NULL:
+                return null;
+            case LONG:
+                return in.readLong();
+            case DOUBLE:
+                return in.readDouble();
+            case BOOLEAN:
+                return in.readBoolean();
+            case STRING:
+                return readString(in);
+            default:
+                throw new IOException("Unknown value type " + type);
+        }
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        byte[] utf8 = new byte[length];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,192 @@
+package com.rulemanagement.service;
+
+import com.rulemanagement.model.EvaluationFact;
+import com.rulemanagement.model.EvaluationRequest;
+import com.rulemanagement.model.EvaluationResult;
+import org.kie.api.KieBase;
+import org.kie.api.definition.KiePackage;
+import org.kie.api.definition.type.FactType;
+import org.kie.api.event.rule.AfterMatchFiredEvent;
+import org.kie.api.event.rule.DefaultAgendaEventListener;
+import org.kie.api.runtime.StatelessKieSession;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+@Service
+public class RuleEngineService {
+
+    private static final int SESSION_POOL_SIZE = 32;
+
+    @Autowired
+    private RuleService ruleService;
+
+    @Autowired
+    private ValidationService validationService;
+
+    private final Map<RuleWorkspace, CompiledEngine> engines = Collections.synchronizedMap(new WeakHashMap<>());
+    // Explicit locks rather than synchronized, so virtual threads waiting on a compile do not pin their carrier
+    private final Map<RuleWorkspace, Lock> compileLocks = Collections.synchronizedMap(new WeakHashMap<>());
+
+    public List<EvaluationResult> evaluate(RuleWorkspace workspace, EvaluationRequest request) throws Exception {
+        if (request.getBatches() == null || request.getBatches().isEmpty()) {
+            throw new IllegalArgumentException("At least one batch of facts is required");
+        }
+
+        CompiledEngine current = currentEngine(workspace);
+        List<EvaluationResult> results = new ArrayList<>(request.getBatches().size());
+        for (List<EvaluationFact> batch : request.getBatches()) {
+            results.add(current.execute(batch));
+        }
+        return results;
+    }
+
+    private CompiledEngine currentEngine(RuleWorkspace workspace) throws Exception {
+        long rulesVersion = workspace.getRulesVersion();
+        CompiledEngine current = engines.get(workspace);
+        if (current != null && current.rulesVersion == rulesVersion) {
+            return current;
+        }
+
+        Lock compileLock = compileLocks.computeIfAbsent(workspace, w -> new ReentrantLock());
+        compileLock.lock();
+        try {
+            current = engines.get(workspace);
+            rulesVersion = workspace.getRulesVersion();
+            if (current != null && current.rulesVersion == rulesVersion) {
+                return current;
+            }
+
+            CompiledEngine rebuilt = new CompiledEngine(rulesVersion, buildKieBase(workspace));
+            engines.put(workspace, rebuilt);
+            return rebuilt;
+        } finally {
+            compileLock.unlock();
+        }
+    }
+
+    private KieBase buildKieBase(RuleWorkspace workspace) throws Exception {
+        if (workspace.size() == 0) {
+            throw new IllegalStateException("No rules to evaluate");
+        }
+
+        File excelFile = ruleService.writePendingChanges(workspace);
+        try {
+            ValidationService.CompiledRules compiled = validationService.compile(excelFile);
+            if (compiled.getKieBase() == null) {
+                throw new IllegalStateException("Rules do not compile: "
+                    + String.join("; ", compiled.getResult().getErrors()));
+            }
+            return compiled.getKieBase();
+        } finally {
+            Files.deleteIfExists(excelFile.toPath());
+        }
+    }
+
+    private class CompiledEngine {
+        private final long rulesVersion;
+        private final KieBase kieBase;
+        private final BlockingQueue<PooledSession> sessionPool = new ArrayBlockingQueue<>(SESSION_POOL_SIZE);
+
+        CompiledEngine(long rulesVersion, KieBase kieBase) {
+            this.rulesVersion = rulesVersion;
+            this.kieBase = kieBase;
+        }
+
+        EvaluationResult execute(List<EvaluationFact> batch) throws ReflectiveOperationException {
+            List<Object> facts = new ArrayList<>(batch.size());
+            for (EvaluationFact fact : batch) {
+                facts.add(toFactObject(fact));
+            }
+
+            PooledSession session = sessionPool.poll();
+            if (session == null) {
+                session = new PooledSession(kieBase.newStatelessKieSession());
+            }
+
+            List<String> firedRules;
+            try {
+                session.firedRules.clear();
+                session.session.execute(facts);
+                firedRules = new ArrayList<>(session.firedRules);
+            } finally {
+                sessionPool.offer(session);
+            }
+
+            List<EvaluationFact> resultFacts = new ArrayList<>(facts.size());
+            for (int i = 0; i < facts.size(); i++) {
+                resultFacts.add(new EvaluationFact(batch.get(i).getType(), toFactValues(facts.get(i))));
+            }
+            return new EvaluationResult(firedRules, resultFacts);
+        }
+
+        /**
+         * Builds a fact from a type declared in the rules. Names of any other class are rejected, so a
+         * request can never load or instantiate arbitrary classes.
+         */
+        private Object toFactObject(EvaluationFact fact) throws ReflectiveOperationException {
+            if (fact.getType() == null || fact.getType().isEmpty()) {
+                throw new IllegalArgumentException("Every fact needs a type");
+            }
+
+            FactType factType = findFactType(fact.getType());
+            if (factType == null) {
+                throw new IllegalArgumentException("Unknown fact type: " + fact.getType()
+                    + ". Facts must use a type declared in the rules.");
+            }
+
+            Object instance = factType.newInstance();
+            try {
+                factType.setFromMap(instance, fact.getValues());
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid values for fact type " + fact.getType() + ": "
+                    + e.getMessage());
+            }
+            return instance;
+        }
+
+        private Map<String, Object> toFactValues(Object fact) {
+            return findFactType(fact.getClass().getName()).getAsMap(fact);
+        }
+
+        private FactType findFactType(String typeName) {
+            int lastDot = typeName.lastIndexOf('.');
+            if (lastDot > 0) {
+                return kieBase.getFactType(typeName.substring(0, lastDot), typeName.substring(lastDot + 1));
+            }
+            for (KiePackage kiePackage : kieBase.getKiePackages()) {
+                FactType factType = kieBase.getFactType(kiePackage.getName(), typeName);
+                if (factType != null) {
+                    return factType;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static class PooledSession {
+        private final StatelessKieSession session;
+        private final List<String> firedRules = new ArrayList<>();
+
+        PooledSession(StatelessKieSession session) {
+            this.session = session;
+            session.addEventListener(new DefaultAgendaEventListener() {
+                @Override
+                public void afterMatchFired(AfterMatchFiredEvent event) {
+                    firedRules.add(event.getMatch().getRule().getName());
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package com.rulemanagement.service;
+
+import com.rulemanagement.model.Rule;
+import com.rulemanagement.model.RulePage;
+import com.rulemanagement.model.RuleQuery;
+import com.rulemanagement.model.RuleQuery.SortField;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Secondary indexes over one workspace's rules: names in sort order, the inactive rules, and the ids
+ * holding each condition and action value. Every hit is checked against the live rule before it is
+ * returned, so an index that trails a concurrent edit by a moment never serves a rule that no longer
+ * matches.
+ */
+class RuleIndex {
+
+    private static final int STRIPES = 64;
+
+    private final NavigableMap<Long, Rule> rules;
+    // The rule instance each id was last indexed as, so a refresh knows which entries to take out
+    private final Map<Long, Rule> indexed = new ConcurrentHashMap<>();
+    private final NavigableSet<NameKey> names = new ConcurrentSkipListSet<>();
+    private final NavigableSet<Long> inactive = new ConcurrentSkipListSet<>();
+    private final Map<String, Map<String, Postings>> conditionValues = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Postings>> actionValues = new ConcurrentHashMap<>();
+    private final SearchIndex searchIndex = new SearchIndex();
+    private final Lock[] stripes = new Lock[STRIPES];
+
+    RuleIndex(NavigableMap<Long, Rule> rules) {
+        this.rules = rules;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Brings the index in line with whatever is stored under this id now. Racing edits to the same rule
+     * refresh one at a time and each reads the latest rule, so the last refresh always leaves it current.
+     */
+    void refresh(Long ruleId) {
+        Lock stripe = stripes[Math.floorMod(ruleId.hashCode(), STRIPES)];
+        stripe.lock();
+        try {
+            Rule current = rules.get(ruleId);
+            Rule previous = current != null ? indexed.put(ruleId, current) : indexed.remove(ruleId);
+            if (previous == current) {
+                return;
+            }
+            if (previous != null) {
+                remove(ruleId, previous);
+            }
+            if (current != null) {
+                add(ruleId, current);
+            }
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * The number of rules indexed, without walking the rules map.
+     */
+    int size() {
+        return indexed.size();
+    }
+
+    RulePage query(RuleQuery query) {
+        if (query.getSort() == SortField.NAME) {
+            return queryByName(query);
+        }
+
+        NavigableSet<Long> ids = candidateIds(query);
+        if (ids == null) {
+            ids = rules.navigableKeySet();
+        }
+        if (query.isDescending()) {
+            ids = ids.descendingSet();
+        }
+        if (query.getCursor() != null) {
+            ids = ids.tailSet(Long.valueOf(decodeCursor(query.getCursor(), 'i')), false);
+        }
+
+        List<Rule> items = new ArrayList<>();
+        for (Long id : ids) {
+            Rule rule = rules.get(id);
+            if (rule != null && matches(rule, query)) {
+                items.add(rule);
+                if (items.size() > query.getLimit()) {
+                    items.remove(query.getLimit());
+                    return new RulePage(items, encodeCursor('i', String.valueOf(items.get(items.size() - 1).getId())));
+                }
+            }
+        }
+        return new RulePage(items, null);
+    }
+
+    /**
+     * Rules, in id order, having for every word of {@code text} a word in their name, description or
+     * values that starts with it.
+     */
+    RulePage search(String text, int limit, String cursor) {
+        List<String> terms = SearchIndex.terms(text);
+        if (terms.isEmpty()) {
+            throw new IllegalArgumentException("Search text has no words to look for");
+        }
+        long afterId = cursor != null ? Long.parseLong(decodeCursor(cursor, 's')) : Long.MIN_VALUE;
+
+        Iterator<Long> ids = searchIndex.candidates(terms, afterId, indexed.size());
+        if (ids == null) {
+            ids = rules.navigableKeySet().tailSet(afterId, false).iterator();
+        }
+
+        List<Rule> items = new ArrayList<>();
+        while (ids.hasNext()) {
+            Rule rule = rules.get(ids.next());
+            if (rule != null && SearchIndex.matches(rule, terms)) {
+                if (items.size() == limit) {
+                    return new RulePage(items, encodeCursor('s', String.valueOf(items.get(limit - 1).getId())));
+                }
+                items.add(rule);
+            }
+        }
+        return new RulePage(items, null);
+    }
+
+    private RulePage queryByName(RuleQuery query) {
+        NavigableSet<NameKey> keys;
+        if (!query.getConditions().isEmpty() || !query.getActions().isEmpty()
+                || Boolean.FALSE.equals(query.getActive())) {
+            // A value filter narrows the rules well below the name range; sort just those
+            keys = new TreeSet<>();
+            for (Long id : candidateIds(query)) {
+                Rule rule = rules.get(id);
+                if (rule != null && matches(rule, query)) {
+                    keys.add(new NameKey(sortName(rule), id));
+                }
+            }
+        } else if (query.getNamePrefix() != null) {
+            String prefix = query.getNamePrefix().toLowerCase(Locale.ROOT);
+            keys = names.subSet(new NameKey(prefix, Long.MIN_VALUE), true,
+                new NameKey(prefix + Character.MAX_VALUE, Long.MIN_VALUE), false);
+        } else {
+            keys = names;
+        }
+
+        if (query.isDescending()) {
+            keys = keys.descendingSet();
+        }
+        if (query.getCursor() != null) {
+            String cursor = decodeCursor(query.getCursor(), 'n');
+            int separator = cursor.indexOf(':');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            keys = keys.tailSet(new NameKey(cursor.substring(separator + 1),
+                Long.parseLong(cursor.substring(0, separator))), false);
+        }
+
+        List<Rule> items = new ArrayList<>();
+        NameKey last = null;
+        for (NameKey key : keys) {
+            Rule rule = rules.get(key.id);
+            // Skips the old key of a rule renamed since it was indexed
+            if (rule == null || !matches(rule, query) || !sortName(rule).equals(key.name)) {
+                continue;
+            }
+            if (items.size() == query.getLimit()) {
+                return new RulePage(items, encodeCursor('n', last.id + ":" + last.name));
+            }
+            items.add(rule);
+            last = key;
+        }
+        return new RulePage(items, null);
+    }
+
+    /**
+     * The smallest indexed id set every match must be in, or null when the query has to walk all rules.
+     */
+    private NavigableSet<Long> candidateIds(RuleQuery query) {
+        Postings smallest = null;
+        for (Map.Entry<String, String> filter : query.getConditions().entrySet()) {
+            Postings postings = postingsFor(conditionValues, filter.getKey(), filter.getValue());
+            if (postings == null) {
+                return Collections.emptyNavigableSet();
+            }
+            if (smallest == null || postings.size() < smallest.size()) {
+                smallest = postings;
+            }
+        }
+        for (Map.Entry<String, String> filter : query.getActions().entrySet()) {
+            Postings postings = postingsFor(actionValues, filter.getKey(), filter.getValue());
+            if (postings == null) {
+                return Collections.emptyNavigableSet();
+            }
+            if (smallest == null || postings.size() < smallest.size()) {
+                smallest = postings;
+            }
+        }
+        if (smallest != null) {
+            return smallest.ids;
+        }
+
+        if (Boolean.FALSE.equals(query.getActive())) {
+            return inactive;
+        }
+        if (query.getNamePrefix() != null) {
+            String prefix = query.getNamePrefix().toLowerCase(Locale.ROOT);
+            NavigableSet<Long> ids = new TreeSet<>();
+            for (NameKey key : names.subSet(new NameKey(prefix, Long.MIN_VALUE), true,
+                    new NameKey(prefix + Character.MAX_VALUE, Long.MIN_VALUE), false)) {
+                ids.add(key.id);
+            }
+            return ids;
+        }
+        return null;
+    }
+
+    private boolean matches(Rule rule, RuleQuery query) {
+        if (query.getActive() != null && rule.isActive() != query.getActive()) {
+            return false;
+        }
+        if (query.getNamePrefix() != null
+                && !sortName(rule).startsWith(query.getNamePrefix().toLowerCase(Locale.ROOT))) {
+            return false;
+        }
+        return matchesValues(rule.getConditions(), query.getConditions())
+            && matchesValues(rule.getActions(), query.getActions());
+    }
+
+    private boolean matchesValues(Map<String, Object> values, Map<String, String> filters) {
+        for (Map.Entry<String, String> filter : filters.entrySet()) {
+            if (values == null || !values.containsKey(filter.getKey())
+                    || !valueKey(values.get(filter.getKey())).equals(filter.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void add(Long ruleId, Rule rule) {
+        names.add(new NameKey(sortName(rule), ruleId));
+        if (!rule.isActive()) {
+            inactive.add(ruleId);
+        }
+        post(conditionValues, rule.getConditions(), ruleId);
+        post(actionValues, rule.getActions(), ruleId);
+        searchIndex.add(ruleId, rule);
+    }
+
+    private void remove(Long ruleId, Rule rule) {
+        names.remove(new NameKey(sortName(rule), ruleId));
+        inactive.remove(ruleId);
+        unpost(conditionValues, rule.getConditions(), ruleId);
+        unpost(actionValues, rule.getActions(), ruleId);
+        searchIndex.remove(ruleId, rule);
+    }
+
+    private void post(Map<String, Map<String, Postings>> columns, Map<String, Object> values, Long ruleId) {
+        if (values == null) {
+            return;
+        }
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            columns.computeIfAbsent(entry.getKey(), header -> new ConcurrentHashMap<>())
+                .compute(valueKey(entry.getValue()), (value, postings) -> Postings.with(postings, ruleId));
+        }
+    }
+
+    private void unpost(Map<String, Map<String, Postings>> columns, Map<String, Object> values, Long ruleId) {
+        if (values == null) {
+            return;
+        }
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            Map<String, Postings> column = columns.get(entry.getKey());
+            if (column == null) {
+                continue;
+            }
+            column.computeIfPresent(valueKey(entry.getValue()), (value, postings) -> Postings.without(postings, ruleId));
+        }
+    }
+
+    private static Postings postingsFor(Map<String, Map<String, Postings>> columns, String header, String value) {
+        Map<String, Postings> column = columns.get(header);
+        return column != null ? column.get(value) : null;
+    }
+
+    private static String valueKey(Object value) {
+        return value != null ? String.valueOf(value) : "";
+    }
+
+    private static String sortName(Rule rule) {
+        return rule.getName() != null ? rule.getName().toLowerCase(Locale.ROOT) : "";
+    }
+
+    private static String encodeCursor(char sort, String position) {
+        return Base64.getUrlEncoder().withoutPadding()
+            .encodeToString((sort + position).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeCursor(String cursor, char sort) {
+        String decoded;
+        try {
+            decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        if (decoded.isEmpty() || decoded.charAt(0) != sort) {
+            throw new IllegalArgumentException("Cursor was issued for a different sort order");
+        }
+        return decoded.substring(1);
+    }
+
+    /**
+     * Ids holding one indexed value. The count is kept alongside because a skip list's size is a full walk.
+     * Both change inside the owning {@link ConcurrentHashMap}'s compute for the value, which runs one at a
+     * time per key; the count is atomic as well, so readers outside the compute never see a torn update.
+     */
+    static class Postings {
+        final NavigableSet<Long> ids = new ConcurrentSkipListSet<>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        int size() {
+            return size.get();
+        }
+
+        static Postings with(Postings postings, Long ruleId) {
+            Postings updated = postings != null ? postings : new Postings();
+            if (updated.ids.add(ruleId)) {
+                updated.size.incrementAndGet();
+            }
+            return updated;
+        }
+
+        static Postings without(Postings postings, Long ruleId) {
+            if (postings.ids.remove(ruleId)) {
+                postings.size.decrementAndGet();
+            }
+            return postings.size() > 0 ? postings : null;
+        }
+    }
+
+    private static final class NameKey implements Comparable<NameKey> {
+        private final String name;
+        private final long id;
+
+        NameKey(String name, long id) {
+            this.name = name;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(NameKey other) {
+            int byName = name.compareTo(other.name);
+            return byName != 0 ? byName : Long.compare(id, other.id);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof NameKey && compareTo((NameKey) other) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode() * 31 + Long.hashCode(id);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.rulemanagement.service;
+
+import com.rulemanagement.model.Rule;
+
+public class RuleNotWritableException extends RuntimeException {
+
+    public RuleNotWritableException(Rule rule) {
+        super("Rule " + rule.getId() + " comes from RuleTable " + rule.getTable() + " on sheet " + rule.getSheet()
+            + ", which cannot be written back; only rules of the first table can be changed");
+    }
+}
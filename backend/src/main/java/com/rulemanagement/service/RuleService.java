@@ -1,70 +1,393 @@
 package com.rulemanagement.service;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.rulemanagement.model.GitRepository;
 import com.rulemanagement.model.Rule;
+import com.rulemanagement.model.RuleBatchOperation;
+import com.rulemanagement.model.RuleBatchResult;
+import com.rulemanagement.model.RuleChange;
+import com.rulemanagement.model.RuleChange.ChangeType;
+import com.rulemanagement.model.RulePage;
+import com.rulemanagement.model.RuleQuery;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 @Service
 public class RuleService {
 
+    private static final String DEFAULT_WORKSPACE_ID = "default";
+
     @Autowired
     private GitService gitService;
 
     @Autowired
     private ExcelService excelService;
 
-    private final Map<Long, Rule> rulesCache = new ConcurrentHashMap<>();
-    private final AtomicLong idGenerator = new AtomicLong(1);
-    private GitRepository lastUsedGitRepo;
+    @Autowired
+    private ParseCache parseCache;
+
+    @Autowired
+    private WorkspaceStore workspaceStore;
+
+    @Value("${rule-management.workspaces.max-count:32}")
+    private int maxWorkspaces;
+
+    @Value("${rule-management.workspaces.max-rules:500000}")
+    private long maxWorkspaceRules;
+
+    @Value("${rule-management.batch.max-operations:100000}")
+    private int maxBatchOperations;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PipelineMetrics metrics;
+
+    private final LinkedHashMap<String, RuleWorkspace> workspaces = new LinkedHashMap<>(16, 0.75f, true);
+    // Held while a workspace is written to the store and put in place, so the two stay in step
+    private final Map<String, Lock> storeLocks = new ConcurrentHashMap<>();
+    private volatile String lastFetchedWorkspaceId;
+
+    @PostConstruct
+    void restoreWorkspaces() {
+        synchronized (workspaces) {
+            for (RuleWorkspace workspace : workspaceStore.loadAll()) {
+                workspaces.put(workspace.getId(), workspace);
+                if (workspace.getGitRepo() != null) {
+                    lastFetchedWorkspaceId = workspace.getId();
+                }
+            }
+        }
+    }
+
+    @PostConstruct
+    void registerMetrics() {
+        metrics.gauge("rule.workspaces", "Workspaces held in memory", this, RuleService::getWorkspaceCount);
+        metrics.gauge("rule.rules", "Rules across all workspaces", this, RuleService::getRuleCount);
+    }
 
     public List<Rule> fetchRulesFromGit(GitRepository gitRepo) throws Exception {
-        File excelFile = gitService.fetchFileFromGit(gitRepo);
-        List<Rule> rules = excelService.parseExcelFile(excelFile);
-        
-        rulesCache.clear();
-        for (Rule rule : rules) {
-            rulesCache.put(rule.getId(), rule);
-        }
-        
-        this.lastUsedGitRepo = gitRepo;
-        
+        return loadWorkspace(gitRepo, fetchTemplate(gitRepo), rule -> { });
+    }
+
+    public RuleTemplate fetchTemplate(GitRepository gitRepo) throws Exception {
+        return gitService.fetchTemplate(gitRepo);
+    }
+
+    /**
+     * Reads the rules of a fetched template into a new workspace for the repository. Each rule is handed
+     * to {@code onRule} as soon as it is parsed, so a caller can stream rules on before the last row is
+     * read; the workspace replaces the previous one once all rules are in.
+     */
+    public List<Rule> loadWorkspace(GitRepository gitRepo, RuleTemplate template, Consumer<Rule> onRule)
+            throws IOException {
+        // Versioned here rather than by the workspace so streamed rules already carry their version
+        Consumer<Rule> versioned = rule -> {
+            if (rule.getVersion() == 0) {
+                rule.setVersion(1);
+            }
+            onRule.accept(rule);
+        };
+
+        List<Rule> rules = parseCache.get(template);
+        if (rules != null) {
+            rules.forEach(versioned);
+        } else {
+            List<Rule> parsed = new ArrayList<>();
+            excelService.parseExcelFile(template, versioned.andThen(parsed::add));
+            rules = parsed;
+            parseCache.put(template, rules);
+        }
+
+        RuleWorkspace workspace = new RuleWorkspace(workspaceIdFor(gitRepo), gitRepo, template, rules);
+        List<RuleWorkspace> evicted;
+        Lock storeLock = storeLockFor(workspace.getId());
+        storeLock.lock();
+        try {
+            RuleWorkspace replaced;
+            synchronized (workspaces) {
+                replaced = workspaces.get(workspace.getId());
+            }
+            // Saving closes the log under this id, so the workspace being replaced stops writing to it first
+            if (replaced != null) {
+                workspaceStore.detach(replaced);
+            }
+            workspaceStore.save(workspace);
+            synchronized (workspaces) {
+                workspaces.put(workspace.getId(), workspace);
+                evicted = evictWorkspaces(workspace.getId());
+            }
+        } finally {
+            storeLock.unlock();
+        }
+        this.lastFetchedWorkspaceId = workspace.getId();
+        deleteStores(evicted);
+
         return rules;
     }
 
-    public GitRepository getLastUsedGitRepo() {
-        return lastUsedGitRepo;
+    public String workspaceIdFor(GitRepository gitRepo) {
+        String key = gitRepo.getUrl() + "#" + gitRepo.getBranch() + "#" + gitRepo.getFilePath();
+        return DigestUtils.md5DigestAsHex(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Resolves a workspace by id. Without an id this is the most recently fetched workspace, or an
+     * empty scratch workspace when nothing has been fetched yet.
+     */
+    public RuleWorkspace getWorkspace(String workspaceId) {
+        synchronized (workspaces) {
+            String id = workspaceId != null ? workspaceId : lastFetchedWorkspaceId;
+            RuleWorkspace workspace = workspaces.get(id != null ? id : DEFAULT_WORKSPACE_ID);
+            if (workspace != null) {
+                return workspace;
+            }
+            if (id != null) {
+                throw new WorkspaceNotFoundException(id);
+            }
+        }
+
+        Lock storeLock = storeLockFor(DEFAULT_WORKSPACE_ID);
+        storeLock.lock();
+        try {
+            synchronized (workspaces) {
+                RuleWorkspace scratch = workspaces.get(DEFAULT_WORKSPACE_ID);
+                if (scratch != null) {
+                    return scratch;
+                }
+            }
+            RuleWorkspace scratch = new RuleWorkspace(DEFAULT_WORKSPACE_ID, null, null, Collections.emptyList());
+            workspaceStore.save(scratch);
+            synchronized (workspaces) {
+                workspaces.put(DEFAULT_WORKSPACE_ID, scratch);
+            }
+            return scratch;
+        } finally {
+            storeLock.unlock();
+        }
+    }
+
+    private Lock storeLockFor(String workspaceId) {
+        return storeLocks.computeIfAbsent(workspaceId, id -> new ReentrantLock());
+    }
+
+    public int getWorkspaceCount() {
+        synchronized (workspaces) {
+            return workspaces.size();
+        }
+    }
+
+    public long getRuleCount() {
+        synchronized (workspaces) {
+            long count = 0;
+            for (RuleWorkspace workspace : workspaces.values()) {
+                count += workspace.size();
+            }
+            return count;
+        }
+    }
+
+    public List<Rule> getAllRules(String workspaceId) {
+        return getWorkspace(workspaceId).getAllRules();
+    }
+
+    public Collection<Rule> getRulesView(String workspaceId) {
+        return getWorkspace(workspaceId).rulesView();
+    }
+
+    public RulePage queryRules(String workspaceId, RuleQuery query) {
+        return getWorkspace(workspaceId).queryRules(query);
+    }
+
+    public RulePage searchRules(String workspaceId, String text, int limit, String cursor) {
+        return getWorkspace(workspaceId).searchRules(text, limit, cursor);
+    }
+
+    public Rule getRuleById(String workspaceId, Long id) {
+        return getWorkspace(workspaceId).getRule(id);
+    }
+
+    public Rule createRule(String workspaceId, Rule rule) {
+        RuleWorkspace workspace = getWorkspace(workspaceId);
+        Rule created = workspace.createRule(rule);
+        workspaceStore.compactIfNeeded(workspace);
+        return created;
+    }
+
+    public Rule updateRule(String workspaceId, Long id, Rule updatedRule, Long expectedVersion) {
+        RuleWorkspace workspace = getWorkspace(workspaceId);
+        Rule updated = workspace.updateRule(id, updatedRule, expectedVersion);
+        workspaceStore.compactIfNeeded(workspace);
+        return updated;
+    }
+
+    public boolean deleteRule(String workspaceId, Long id, Long expectedVersion) {
+        RuleWorkspace workspace = getWorkspace(workspaceId);
+        boolean deleted = workspace.deleteRule(id, expectedVersion);
+        workspaceStore.compactIfNeeded(workspace);
+        return deleted;
     }
 
-    public List<Rule> getAllRules() {
-        return new ArrayList<>(rulesCache.values());
+    public List<RuleBatchResult> applyBatch(String workspaceId, List<RuleBatchOperation> operations) {
+        if (operations.size() > maxBatchOperations) {
+            throw new IllegalArgumentException("A batch holds at most " + maxBatchOperations + " operations");
+        }
+        RuleWorkspace workspace = getWorkspace(workspaceId);
+        List<RuleBatchResult> results = workspace.applyBatch(operations);
+        workspaceStore.compactIfNeeded(workspace);
+        return results;
     }
 
-    public Rule getRuleById(Long id) {
-        return rulesCache.get(id);
+    /**
+     * Reads newline-delimited operations one at a time, so a large batch is never held as raw text or
+     * as a parsed JSON tree.
+     */
+    public List<RuleBatchOperation> readBatch(InputStream in) throws IOException {
+        List<RuleBatchOperation> operations = new ArrayList<>();
+        try (MappingIterator<RuleBatchOperation> values =
+                 objectMapper.readerFor(RuleBatchOperation.class).readValues(in)) {
+            while (values.hasNextValue()) {
+                if (operations.size() == maxBatchOperations) {
+                    throw new IllegalArgumentException("A batch holds at most " + maxBatchOperations + " operations");
+                }
+                operations.add(values.nextValue());
+            }
+        }
+        return operations;
     }
 
-    public Rule createRule(Rule rule) {
-        rule.setId(idGenerator.getAndIncrement());
-        rulesCache.put(rule.getId(), rule);
-        return rule;
+    /**
+     * Writes the rules into a temporary copy of the workspace's template, touching only the rows changed
+     * since the last fetch. Falls back to rewriting every row when an edit cannot be mapped onto the
+     * template's data block, or when the template is too large to patch in memory. The caller deletes the
+     * returned file.
+     */
+    public File writePendingChanges(RuleWorkspace workspace) throws IOException {
+        RuleTemplate template = workspace.getTemplate();
+        if (template == null) {
+            throw new IllegalStateException("No Git repository configured. Please fetch rules from Git first.");
+        }
+        if (!workspace.hasPendingChanges()) {
+            return excelService.writeTemplateCopy(template);
+        }
+
+        Map<Integer, Rule> updatedRows = new HashMap<>();
+        Set<Integer> deletedRows = new HashSet<>();
+        List<Rule> appendedRules = new ArrayList<>();
+        List<Rule> rules;
+
+        workspace.snapshotLock().lock();
+        try {
+            for (RuleChange change : workspace.getPendingChanges()) {
+                Rule rule = workspace.getRule(change.getRuleId());
+                Integer sourceRow = workspace.getSourceRow(change.getRuleId());
+
+                if (change.getType() == ChangeType.DELETED) {
+                    if (sourceRow != null) {
+                        deletedRows.add(sourceRow);
+                    }
+                } else if (rule != null) {
+                    if (sourceRow != null) {
+                        updatedRows.put(sourceRow, rule);
+                    } else {
+                        appendedRules.add(rule);
+                    }
+                }
+            }
+            rules = workspace.getAllRules();
+        } finally {
+            workspace.snapshotLock().unlock();
+        }
+
+        // Rewriting or appending to the first sheet would run over the RuleTable blocks below the first one
+        boolean severalTables = rules.stream()
+            .filter(rule -> rule.getSheet() != null && workspace.getSourceRow(rule.getId()) != null)
+            .map(Rule::getTable)
+            .filter(Objects::nonNull)
+            .distinct()
+            .count() > 1;
+        if (severalTables && !appendedRules.isEmpty()) {
+            throw new IllegalStateException(
+                "New rules cannot be saved: the first sheet holds more than one RuleTable block");
+        }
+
+        // Only the first RuleTable block is rewritten, so with several blocks the template is always patched
+        if (severalTables || excelService.isPatchable(template)) {
+            File patchedFile = excelService.patchRulesInExcel(template, updatedRows, deletedRows, appendedRules);
+            if (patchedFile != null) {
+                return patchedFile;
+            }
+        }
+        if (severalTables) {
+            throw new IllegalStateException(
+                "Rows above the data block cannot be saved: the first sheet holds more than one RuleTable block");
+        }
+
+        rules.sort(Comparator.comparing(Rule::getId));
+        return excelService.writeRulesToExcel(rules, template);
     }
 
-    public Rule updateRule(Long id, Rule updatedRule) {
-        if (rulesCache.containsKey(id)) {
-            updatedRule.setId(id);
-            rulesCache.put(id, updatedRule);
-            return updatedRule;
+    /**
+     * Drops least recently used workspaces until both the workspace and the total rule limits hold.
+     * Workspaces with unsaved edits are never dropped; when only those are left the limits are let go over.
+     * Returns the dropped workspaces, whose stores are deleted once the caller has left the monitor.
+     */
+    private List<RuleWorkspace> evictWorkspaces(String keepId) {
+        List<RuleWorkspace> evicted = new ArrayList<>();
+        long totalRules = 0;
+        for (RuleWorkspace workspace : workspaces.values()) {
+            totalRules += workspace.size();
+        }
+
+        Iterator<RuleWorkspace> eldestFirst = workspaces.values().iterator();
+        while ((workspaces.size() > maxWorkspaces || totalRules > maxWorkspaceRules) && eldestFirst.hasNext()) {
+            RuleWorkspace workspace = eldestFirst.next();
+            if (workspace.getId().equals(keepId) || workspace.hasPendingChanges()) {
+                continue;
+            }
+            eldestFirst.remove();
+            evicted.add(workspace);
+            totalRules -= workspace.size();
         }
-        return null;
+        return evicted;
     }
 
-    public boolean deleteRule(Long id) {
-        return rulesCache.remove(id) != null;
+    /**
+     * Deletes the stores of evicted workspaces, outside the workspaces monitor so the disk work never holds
+     * it. A workspace fetched again under the same id in the meantime keeps its store.
+     */
+    private void deleteStores(List<RuleWorkspace> evicted) {
+        for (RuleWorkspace workspace : evicted) {
+            Lock storeLock = storeLockFor(workspace.getId());
+            storeLock.lock();
+            try {
+                boolean fetchedAgain;
+                synchronized (workspaces) {
+                    fetchedAgain = workspaces.containsKey(workspace.getId());
+                }
+                if (fetchedAgain) {
+                    workspaceStore.detach(workspace);
+                } else {
+                    workspaceStore.delete(workspace);
+                }
+            } finally {
+                storeLock.unlock();
+            }
+        }
     }
 }
@@ -0,0 +1,274 @@
+package com.rulemanagement.service;
+
+import com.rulemanagement.model.Rule;
+
+import java.util.*;
+
+/**
+ * Column-oriented storage for the condition and action values of a parsed rule set. Each header is one
+ * column shared by every row; numbers and booleans live in a primitive array and strings are interned per
+ * table. The rules handed out keep their own id, name and version but read their conditions and actions
+ * through read-only map views over their row, so the JSON shape is unchanged.
+ *
+ * <p>A table is filled by a single thread and only read once its rules are published.
+ */
+public class RuleTable {
+
+    private static final byte ABSENT = 0;
+    private static final byte NULL = 1;
+    private static final byte STRING = 2;
+    // Text that round-trips through a double or boolean is stored as one but read back as the same text
+    private static final byte NUMBER_TEXT = 3;
+    private static final byte TRUE_TEXT = 4;
+    private static final byte FALSE_TEXT = 5;
+    private static final byte DOUBLE = 6;
+    private static final byte LONG = 7;
+    private static final byte BOOLEAN = 8;
+
+    private final Map<String, Column> conditionColumns = new LinkedHashMap<>();
+    private final Map<String, Column> actionColumns = new LinkedHashMap<>();
+    private final Map<String, String> internedValues = new HashMap<>();
+    private int rowCount;
+    private int capacity = 16;
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Starts a new row and returns a rule whose conditions and actions are views over it.
+     */
+    public Rule addRow() {
+        if (rowCount == capacity) {
+            capacity *= 2;
+            for (Column column : conditionColumns.values()) {
+                column.grow(capacity);
+            }
+            for (Column column : actionColumns.values()) {
+                column.grow(capacity);
+            }
+        }
+
+        int row = rowCount++;
+        return new Rule(new RowValues(conditionColumns, row), new RowValues(actionColumns, row));
+    }
+
+    public void setCondition(Rule rule, String header, Object value) {
+        columnFor(conditionColumns, header).set(rowOf(rule.getConditions(), conditionColumns), value);
+    }
+
+    public void setAction(Rule rule, String header, Object value) {
+        columnFor(actionColumns, header).set(rowOf(rule.getActions(), actionColumns), value);
+    }
+
+    /**
+     * Stores a number read from a cell without going through its text; it reads back as
+     * {@code String.valueOf(number)}, as if that text had been set.
+     */
+    public void setConditionNumberText(Rule rule, String header, double number) {
+        columnFor(conditionColumns, header).setBits(rowOf(rule.getConditions(), conditionColumns), NUMBER_TEXT,
+            Double.doubleToRawLongBits(number));
+    }
+
+    public void setActionNumberText(Rule rule, String header, double number) {
+        columnFor(actionColumns, header).setBits(rowOf(rule.getActions(), actionColumns), NUMBER_TEXT,
+            Double.doubleToRawLongBits(number));
+    }
+
+    /**
+     * Returns the table's shared instance of a string, so repeated names and descriptions are held once.
+     */
+    public String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String interned = internedValues.putIfAbsent(value, value);
+        return interned != null ? interned : value;
+    }
+
+    private Column columnFor(Map<String, Column> columns, String header) {
+        return columns.computeIfAbsent(header, key -> new Column(key, capacity));
+    }
+
+    private int rowOf(Map<String, Object> values, Map<String, Column> columns) {
+        if (!(values instanceof RowValues) || ((RowValues) values).columns != columns) {
+            throw new IllegalArgumentException("Rule is not a row of this table");
+        }
+        return ((RowValues) values).row;
+    }
+
+    private class Column {
+        private final String header;
+        private byte[] kinds;
+        private long[] bits;
+        private String[] strings;
+
+        Column(String header, int capacity) {
+            this.header = header;
+            this.kinds = new byte[capacity];
+        }
+
+        void grow(int capacity) {
+            kinds = Arrays.copyOf(kinds, capacity);
+            if (bits != null) {
+                bits = Arrays.copyOf(bits, capacity);
+            }
+            if (strings != null) {
+                strings = Arrays.copyOf(strings, capacity);
+            }
+        }
+
+        void set(int row, Object value) {
+            if (value == null) {
+                kinds[row] = NULL;
+            } else if (value instanceof String) {
+                setText(row, (String) value);
+            } else if (value instanceof Double || value instanceof Float) {
+                setBits(row, DOUBLE, Double.doubleToRawLongBits(((Number) value).doubleValue()));
+            } else if (value instanceof Long || value instanceof Integer || value instanceof Short) {
+                setBits(row, LONG, ((Number) value).longValue());
+            } else if (value instanceof Boolean) {
+                setBits(row, BOOLEAN, (Boolean) value ? 1 : 0);
+            } else {
+                setText(row, value.toString());
+            }
+        }
+
+        private void setText(int row, String text) {
+            if (text.equals("true")) {
+                kinds[row] = TRUE_TEXT;
+                return;
+            }
+            if (text.equals("false")) {
+                kinds[row] = FALSE_TEXT;
+                return;
+            }
+
+            char first = text.isEmpty() ? ' ' : text.charAt(0);
+            if ((first >= '0' && first <= '9') || first == '-') {
+                try {
+                    double number = Double.parseDouble(text);
+                    if (String.valueOf(number).equals(text)) {
+                        setBits(row, NUMBER_TEXT, Double.doubleToRawLongBits(number));
+                        return;
+                    }
+                } catch (NumberFormatException e) {
+                    // Not a number; kept as text
+                }
+            }
+
+            if (strings == null) {
+                strings = new String[kinds.length];
+            }
+            kinds[row] = STRING;
+            strings[row] = intern(text);
+        }
+
+        private void setBits(int row, byte kind, long value) {
+            if (bits == null) {
+                bits = new long[kinds.length];
+            }
+            kinds[row] = kind;
+            bits[row] = value;
+        }
+
+        boolean has(int row) {
+            return kinds[row] != ABSENT;
+        }
+
+        Object get(int row) {
+            switch (kinds[row]) {
+                case STRING:
+                    return strings[row];
+                case NUMBER_TEXT:
+                    return String.valueOf(Double.longBitsToDouble(bits[row]));
+                case TRUE_TEXT:
+                    return "true";
+                case FALSE_TEXT:
+                    return "false";
+                case DOUBLE:
+                    return Double.longBitsToDouble(bits[row]);
+                case LONG:
+                    return bits[row];
+                case BOOLEAN:
+                    return bits[row] != 0;
+                default:
+                    return null;
+            }
+        }
+    }
+
+    /**
+     * Read-only view of one row's conditions or actions, in column order.
+     */
+    private static class RowValues extends AbstractMap<String, Object> {
+        private final Map<String, Column> columns;
+        private final int row;
+
+        RowValues(Map<String, Column> columns, int row) {
+            this.columns = columns;
+            this.row = row;
+        }
+
+        @Override
+        public Object get(Object key) {
+            Column column = columns.get(key);
+            return column != null && row < column.kinds.length ? column.get(row) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            Column column = columns.get(key);
+            return column != null && row < column.kinds.length && column.has(row);
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    Iterator<Column> remaining = columns.values().iterator();
+                    return new Iterator<>() {
+                        private Column next = advance();
+
+                        private Column advance() {
+                            while (remaining.hasNext()) {
+                                Column column = remaining.next();
+                                if (row < column.kinds.length && column.has(row)) {
+                                    return column;
+                                }
+                            }
+                            return null;
+                        }
+
+                        @Override
+                        public boolean hasNext() {
+                            return next != null;
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            if (next == null) {
+                                throw new NoSuchElementException();
+                            }
+                            Column column = next;
+                            next = advance();
+                            return new SimpleImmutableEntry<>(column.header, column.get(row));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    int size = 0;
+                    for (Column column : columns.values()) {
+                        if (row < column.kinds.length && column.has(row)) {
+                            size++;
+                        }
+                    }
+                    return size;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.rulemanagement.service;
+
+/**
+ * A rule workbook as read from Git: its bytes, the commit it was read at and, once known, the layout of
+ * its decision table. Kept with the workspace so validating and saving never go back to the remote.
+ */
+public class RuleTemplate {
+
+    private final String filePath;
+    private final byte[] content;
+    private final String commitId;
+    private final String blobId;
+    private volatile ExcelService.TemplateLayout layout;
+
+    public RuleTemplate(String filePath, byte[] content, String commitId, String blobId) {
+        this.filePath = filePath;
+        this.content = content;
+        this.commitId = commitId;
+        this.blobId = blobId;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public byte[] getContent() {
+        return content;
+    }
+
+    public String getCommitId() {
+        return commitId;
+    }
+
+    public String getBlobId() {
+        return blobId;
+    }
+
+    public boolean isXlsx() {
+        return filePath.toLowerCase().endsWith(".xlsx");
+    }
+
+    public ExcelService.TemplateLayout getLayout() {
+        return layout;
+    }
+
+    void setLayout(ExcelService.TemplateLayout layout) {
+        this.layout = layout;
+    }
+}
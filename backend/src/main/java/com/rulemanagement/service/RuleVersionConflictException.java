@@ -0,0 +1,18 @@
+package com.rulemanagement.service;
+
+import com.rulemanagement.model.Rule;
+
+public class RuleVersionConflictException extends RuntimeException {
+
+    private final Rule currentRule;
+
+    public RuleVersionConflictException(Rule currentRule) {
+        super("Rule " + currentRule.getId() + " was modified concurrently; current version is "
+            + currentRule.getVersion());
+        this.currentRule = currentRule;
+    }
+
+    public Rule getCurrentRule() {
+        return currentRule;
+    }
+}
@@ -0,0 +1,417 @@
+package com.rulemanagement.service;
+
+import com.rulemanagement.model.GitRepository;
+import com.rulemanagement.model.Rule;
+import com.rulemanagement.model.RuleBatchOperation;
+import com.rulemanagement.model.RuleBatchResult;
+import com.rulemanagement.model.RuleChange;
+import com.rulemanagement.model.RuleChange.ChangeType;
+import com.rulemanagement.model.RulePage;
+import com.rulemanagement.model.RuleQuery;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The rules fetched from one repository, branch and file, together with the edits made since.
+ */
+public class RuleWorkspace {
+
+    private final String id;
+    private final GitRepository gitRepo;
+    private final RuleTemplate template;
+    // Sorted by id so pages can seek straight to a cursor
+    private final NavigableMap<Long, Rule> rules = new ConcurrentSkipListMap<>();
+    private final RuleIndex index = new RuleIndex(rules);
+    private final Map<Long, Integer> sourceRows = new HashMap<>();
+    private final Map<Long, RuleChange> pendingChanges = new ConcurrentHashMap<>();
+    private final AtomicLong idGenerator = new AtomicLong(1);
+    private final AtomicLong rulesVersion = new AtomicLong();
+    // The first sheet's RuleTable block that edits are written back to, when the sheet has any
+    private final String writableTable;
+    // Edits share the read side and never block each other; snapshots take the write side
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile EditListener editListener;
+
+    RuleWorkspace(String id, GitRepository gitRepo, RuleTemplate template, List<Rule> fetchedRules) {
+        this.id = id;
+        this.gitRepo = gitRepo;
+        this.template = template;
+
+        long maxId = 0;
+        Rule firstTabled = null;
+        for (Rule rule : fetchedRules) {
+            if (rule.getVersion() == 0) {
+                rule.setVersion(1);
+            }
+            rules.put(rule.getId(), rule);
+            if (rule.getSourceRow() != null) {
+                sourceRows.put(rule.getId(), rule.getSourceRow());
+                if (rule.getTable() != null
+                        && (firstTabled == null || rule.getSourceRow() < firstTabled.getSourceRow())) {
+                    firstTabled = rule;
+                }
+            }
+            maxId = Math.max(maxId, rule.getId());
+        }
+        for (Long ruleId : rules.keySet()) {
+            index.refresh(ruleId);
+        }
+        // The workspace allocator is the only source of ids after the fetch, starting above the parsed ones
+        idGenerator.set(maxId + 1);
+        writableTable = firstTabled != null ? firstTabled.getTable() : null;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public GitRepository getGitRepo() {
+        return gitRepo;
+    }
+
+    public RuleTemplate getTemplate() {
+        return template;
+    }
+
+    public long getRulesVersion() {
+        return rulesVersion.get();
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public List<Rule> getAllRules() {
+        return new ArrayList<>(rules.values());
+    }
+
+    /**
+     * The rules in id order without copying them. Iterating it sees edits made while it runs.
+     */
+    public Collection<Rule> rulesView() {
+        return Collections.unmodifiableCollection(rules.values());
+    }
+
+    public Rule getRule(Long ruleId) {
+        return rules.get(ruleId);
+    }
+
+    public RulePage queryRules(RuleQuery query) {
+        return index.query(query);
+    }
+
+    public RulePage searchRules(String text, int limit, String cursor) {
+        return index.search(text, limit, cursor);
+    }
+
+    public Rule createRule(Rule rule) {
+        lock.readLock().lock();
+        try {
+            rule.setId(idGenerator.getAndIncrement());
+            rule.setVersion(1);
+            // New rules are appended to the first sheet's table, whatever the client sent
+            rule.setSheet(null);
+            rule.setTable(null);
+            rules.put(rule.getId(), rule);
+            index.refresh(rule.getId());
+            recordChange(rule.getId(), ChangeType.CREATED, rule.getVersion());
+            notifyEdit(ChangeType.CREATED, rule.getId(), rule.getVersion(), rule);
+            return rule;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces a rule with compare-and-set on its current instance. With an expected version the
+     * update fails with a conflict when the rule has moved on; without one it retries until it wins.
+     */
+    public Rule updateRule(Long ruleId, Rule updatedRule, Long expectedVersion) {
+        lock.readLock().lock();
+        try {
+            while (true) {
+                Rule current = rules.get(ruleId);
+                if (current == null) {
+                    return null;
+                }
+                if (expectedVersion != null && current.getVersion() != expectedVersion) {
+                    throw new RuleVersionConflictException(current);
+                }
+                if (!isWritable(current)) {
+                    throw new RuleNotWritableException(current);
+                }
+
+                updatedRule.setId(ruleId);
+                updatedRule.setVersion(current.getVersion() + 1);
+                updatedRule.setSheet(current.getSheet());
+                updatedRule.setTable(current.getTable());
+                if (rules.replace(ruleId, current, updatedRule)) {
+                    index.refresh(ruleId);
+                    recordChange(ruleId, ChangeType.UPDATED, updatedRule.getVersion());
+                    notifyEdit(ChangeType.UPDATED, ruleId, updatedRule.getVersion(), updatedRule);
+                    return updatedRule;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean deleteRule(Long ruleId, Long expectedVersion) {
+        lock.readLock().lock();
+        try {
+            while (true) {
+                Rule current = rules.get(ruleId);
+                if (current == null) {
+                    return false;
+                }
+                if (expectedVersion != null && current.getVersion() != expectedVersion) {
+                    throw new RuleVersionConflictException(current);
+                }
+                if (!isWritable(current)) {
+                    throw new RuleNotWritableException(current);
+                }
+
+                if (rules.remove(ruleId, current)) {
+                    index.refresh(ruleId);
+                    recordChange(ruleId, ChangeType.DELETED, current.getVersion() + 1);
+                    notifyEdit(ChangeType.DELETED, ruleId, current.getVersion() + 1, null);
+                    return true;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Applies every operation in order, or none of them. The whole batch is checked first and then applied
+     * in one pass under the snapshot lock, so no other edit interleaves with it. When any operation cannot
+     * apply, the results carry its error and mark the rest as not applied.
+     */
+    public List<RuleBatchResult> applyBatch(List<RuleBatchOperation> operations) {
+        lock.writeLock().lock();
+        try {
+            List<RuleBatchResult> rejected = checkBatch(operations);
+            if (rejected != null) {
+                return rejected;
+            }
+
+            List<RuleBatchResult> results = new ArrayList<>(operations.size());
+            for (int i = 0; i < operations.size(); i++) {
+                RuleBatchOperation operation = operations.get(i);
+                RuleBatchResult result;
+                switch (operation.getOp()) {
+                    case CREATE:
+                        Rule created = createRule(operation.getRule());
+                        result = new RuleBatchResult(i, operation.getOp(), created.getId(), 201);
+                        result.setVersion(created.getVersion());
+                        break;
+                    case UPDATE:
+                        Rule updated = updateRule(operation.getId(), operation.getRule(), null);
+                        result = new RuleBatchResult(i, operation.getOp(), updated.getId(), 200);
+                        result.setVersion(updated.getVersion());
+                        break;
+                    default:
+                        deleteRule(operation.getId(), null);
+                        result = new RuleBatchResult(i, operation.getOp(), operation.getId(), 204);
+                        break;
+                }
+                results.add(result);
+            }
+            return results;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replays the batch against the rule versions it would leave behind, returning null when every
+     * operation applies. Called with the snapshot lock held, so the versions cannot move underneath it.
+     */
+    private List<RuleBatchResult> checkBatch(List<RuleBatchOperation> operations) {
+        // The version each touched rule would be at partway through the batch; 0 once deleted
+        Map<Long, Long> plannedVersions = new HashMap<>();
+        RuleBatchResult failure = null;
+
+        for (int i = 0; i < operations.size() && failure == null; i++) {
+            RuleBatchOperation operation = operations.get(i);
+            if (operation.getOp() == null) {
+                failure = new RuleBatchResult(i, null, operation.getId(), 400);
+                failure.setError("op must be create, update or delete");
+                continue;
+            }
+            if (operation.getOp() != RuleBatchOperation.Operation.DELETE && operation.getRule() == null) {
+                failure = new RuleBatchResult(i, operation.getOp(), operation.getId(), 400);
+                failure.setError("rule is required");
+                continue;
+            }
+            if (operation.getOp() == RuleBatchOperation.Operation.CREATE) {
+                continue;
+            }
+            if (operation.getId() == null) {
+                failure = new RuleBatchResult(i, operation.getOp(), null, 400);
+                failure.setError("id is required");
+                continue;
+            }
+
+            Long version = plannedVersions.get(operation.getId());
+            Rule current = rules.get(operation.getId());
+            if (version == null) {
+                version = current != null ? current.getVersion() : 0L;
+            }
+            if (version != 0L && !isWritable(current)) {
+                failure = new RuleBatchResult(i, operation.getOp(), operation.getId(), 409);
+                failure.setError(new RuleNotWritableException(current).getMessage());
+            } else if (version == 0L) {
+                failure = new RuleBatchResult(i, operation.getOp(), operation.getId(), 404);
+                failure.setError("Rule " + operation.getId() + " not found");
+            } else if (operation.getExpectedVersion() != null && !operation.getExpectedVersion().equals(version)) {
+                failure = new RuleBatchResult(i, operation.getOp(), operation.getId(), 409);
+                failure.setVersion(version);
+                failure.setError("Rule " + operation.getId() + " is at version " + version);
+            } else {
+                plannedVersions.put(operation.getId(),
+                    operation.getOp() == RuleBatchOperation.Operation.DELETE ? 0L : version + 1);
+            }
+        }
+
+        if (failure == null) {
+            return null;
+        }
+        List<RuleBatchResult> results = new ArrayList<>(operations.size());
+        for (int i = 0; i < operations.size(); i++) {
+            if (i == failure.getIndex()) {
+                results.add(failure);
+                continue;
+            }
+            RuleBatchOperation operation = operations.get(i);
+            RuleBatchResult notApplied = new RuleBatchResult(i, operation.getOp(), operation.getId(), 424);
+            notApplied.setError("Not applied: operation " + failure.getIndex() + " failed");
+            results.add(notApplied);
+        }
+        return results;
+    }
+
+    public boolean hasPendingChanges() {
+        return !pendingChanges.isEmpty();
+    }
+
+    public List<RuleChange> getPendingChanges() {
+        List<RuleChange> changes = new ArrayList<>(pendingChanges.values());
+        changes.sort(Comparator.comparing(RuleChange::getRuleId));
+        return changes;
+    }
+
+    /**
+     * Whether edits to the rule can be written back to the template. Rules read from other sheets, or from
+     * a RuleTable block below the first one on the first sheet, are kept as the template has them.
+     */
+    public boolean isWritable(Rule rule) {
+        if (rule.getSheet() == null) {
+            return true;
+        }
+        if (!sourceRows.containsKey(rule.getId())) {
+            return false;
+        }
+        return rule.getTable() == null || writableTable == null || writableTable.equals(rule.getTable());
+    }
+
+    public Integer getSourceRow(Long ruleId) {
+        return sourceRows.get(ruleId);
+    }
+
+    Map<Long, Integer> getSourceRows() {
+        return new HashMap<>(sourceRows);
+    }
+
+    long getNextId() {
+        return idGenerator.get();
+    }
+
+    void setEditListener(EditListener editListener) {
+        this.editListener = editListener;
+    }
+
+    /**
+     * Puts back the bookkeeping of a workspace read from the workspace store.
+     */
+    void restore(Map<Long, Integer> savedSourceRows, List<RuleChange> savedChanges, long nextId, long savedRulesVersion) {
+        sourceRows.clear();
+        sourceRows.putAll(savedSourceRows);
+        for (RuleChange change : savedChanges) {
+            pendingChanges.put(change.getRuleId(), change);
+        }
+        idGenerator.set(nextId);
+        rulesVersion.set(savedRulesVersion);
+    }
+
+    /**
+     * Re-applies an edit read back from the edit log. Edits can be logged out of order, so one at or below
+     * the version already known for the rule, including the version it was deleted at, is skipped.
+     */
+    void replayEdit(ChangeType type, Long ruleId, long ruleVersion, Rule rule, Map<Long, Long> deletedVersions) {
+        Rule current = rules.get(ruleId);
+        long knownVersion = Math.max(current != null ? current.getVersion() : 0,
+            deletedVersions.getOrDefault(ruleId, 0L));
+        if (ruleVersion <= knownVersion) {
+            return;
+        }
+
+        if (type == ChangeType.DELETED) {
+            rules.remove(ruleId);
+            deletedVersions.put(ruleId, ruleVersion);
+        } else {
+            rules.put(ruleId, rule);
+        }
+        index.refresh(ruleId);
+        idGenerator.accumulateAndGet(ruleId + 1, Math::max);
+        recordChange(ruleId, type, ruleVersion);
+    }
+
+    /**
+     * Held while taking a consistent snapshot of rules and pending changes; blocks edits but not reads.
+     */
+    Lock snapshotLock() {
+        return lock.writeLock();
+    }
+
+    private void notifyEdit(ChangeType type, Long ruleId, long ruleVersion, Rule rule) {
+        EditListener listener = editListener;
+        if (listener != null) {
+            listener.ruleEdited(type, ruleId, ruleVersion, rule);
+        }
+    }
+
+    private void recordChange(Long ruleId, ChangeType type, long ruleVersion) {
+        rulesVersion.incrementAndGet();
+        boolean fetched = sourceRows.containsKey(ruleId);
+        RuleChange change;
+        if (type == ChangeType.DELETED) {
+            change = fetched ? new RuleChange(ruleId, ChangeType.DELETED, ruleVersion) : null;
+        } else {
+            change = new RuleChange(ruleId, fetched ? ChangeType.UPDATED : ChangeType.CREATED, ruleVersion);
+        }
+
+        // Edits to the same rule can record out of order; the highest rule version wins
+        pendingChanges.compute(ruleId, (id, previous) -> {
+            if (previous != null && previous.getVersion() > ruleVersion) {
+                return previous;
+            }
+            return change;
+        });
+    }
+
+    /**
+     * Told about every edit while the edit still holds the workspace's read lock.
+     */
+    interface EditListener {
+        void ruleEdited(ChangeType type, Long ruleId, long ruleVersion, Rule rule);
+    }
+}
@@ -0,0 +1,241 @@
+package com.rulemanagement.service;
+
+import com.rulemanagement.model.Rule;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Inverted index from the words in a rule's name, description and values to the rules holding them.
+ * Words are also kept sorted so a search term matches every word it is a prefix of. Updated by
+ * {@link RuleIndex} under the same per-rule refresh, and read without locks.
+ */
+class SearchIndex {
+
+    // Postings change inside the hash map's compute, which runs one at a time per word; a skip list's
+    // compute is not atomic and loses postings when rules sharing a word are edited together
+    private final Map<String, RuleIndex.Postings> words = new ConcurrentHashMap<>();
+    // Kept in step with the keys of words inside the same compute
+    private final NavigableSet<String> sortedWords = new ConcurrentSkipListSet<>();
+
+    void add(Long ruleId, Rule rule) {
+        for (String word : wordsOf(rule)) {
+            words.compute(word, (key, postings) -> {
+                if (postings == null) {
+                    sortedWords.add(key);
+                }
+                return RuleIndex.Postings.with(postings, ruleId);
+            });
+        }
+    }
+
+    void remove(Long ruleId, Rule rule) {
+        for (String word : wordsOf(rule)) {
+            words.computeIfPresent(word, (key, postings) -> {
+                RuleIndex.Postings remaining = RuleIndex.Postings.without(postings, ruleId);
+                if (remaining == null) {
+                    sortedWords.remove(key);
+                }
+                return remaining;
+            });
+        }
+    }
+
+    /**
+     * The rules holding exactly this word, or null when none do.
+     */
+    RuleIndex.Postings postings(String word) {
+        return words.get(word);
+    }
+
+    /**
+     * Ids, in ascending order after {@code afterId}, of the rules that may match every term. Returns null
+     * when the rarest term is common enough that walking the rules in order finds matches sooner.
+     */
+    Iterator<Long> candidates(List<String> terms, long afterId, int ruleCount) {
+        List<RuleIndex.Postings> rarest = null;
+        // Past one rule in eight, most rules walked in id order are hits and merging postings costs more
+        long rarestSize = ruleCount / 8 + 1;
+        for (String term : terms) {
+            List<RuleIndex.Postings> matching = new ArrayList<>();
+            long size = 0;
+            for (String word : sortedWords.subSet(term, true, term + Character.MAX_VALUE, false)) {
+                RuleIndex.Postings postings = words.get(word);
+                if (postings == null) {
+                    continue;
+                }
+                matching.add(postings);
+                size += postings.size();
+                if (size >= rarestSize) {
+                    break;
+                }
+            }
+            if (size == 0) {
+                return Collections.emptyIterator();
+            }
+            if (size < rarestSize) {
+                rarest = matching;
+                rarestSize = size;
+            }
+        }
+
+        if (rarest == null) {
+            return null;
+        }
+
+        List<Iterator<Long>> sources = new ArrayList<>();
+        for (RuleIndex.Postings postings : rarest) {
+            sources.add(postings.ids.tailSet(afterId, false).iterator());
+        }
+        return sources.size() == 1 ? sources.get(0) : new MergedIds(sources);
+    }
+
+    /**
+     * Whether every term is a prefix of some word of the rule. Reads the rule's text in place, since it
+     * runs once per candidate.
+     */
+    static boolean matches(Rule rule, List<String> terms) {
+        for (String term : terms) {
+            if (!hasWordStartingWith(rule.getName(), term)
+                    && !hasWordStartingWith(rule.getDescription(), term)
+                    && !hasValueWordStartingWith(rule.getConditions(), term)
+                    && !hasValueWordStartingWith(rule.getActions(), term)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasValueWordStartingWith(Map<String, Object> values, String term) {
+        if (values == null) {
+            return false;
+        }
+        for (Object value : values.values()) {
+            if (value != null && hasWordStartingWith(String.valueOf(value), term)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasWordStartingWith(String text, String term) {
+        if (text == null) {
+            return false;
+        }
+        boolean wordStart = true;
+        for (int i = 0; i + term.length() <= text.length(); i++) {
+            boolean wordChar = Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && wordStart && text.regionMatches(true, i, term, 0, term.length())) {
+                return true;
+            }
+            wordStart = !wordChar;
+        }
+        return false;
+    }
+
+    /**
+     * Lower-cased runs of letters and digits, without repeats.
+     */
+    static List<String> terms(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        addWords(text, terms);
+        return new ArrayList<>(terms);
+    }
+
+    private static Set<String> wordsOf(Rule rule) {
+        Set<String> ruleWords = new HashSet<>();
+        addWords(rule.getName(), ruleWords);
+        addWords(rule.getDescription(), ruleWords);
+        addValueWords(rule.getConditions(), ruleWords);
+        addValueWords(rule.getActions(), ruleWords);
+        return ruleWords;
+    }
+
+    private static void addValueWords(Map<String, Object> values, Set<String> ruleWords) {
+        if (values == null) {
+            return;
+        }
+        for (Object value : values.values()) {
+            if (value != null) {
+                addWords(String.valueOf(value), ruleWords);
+            }
+        }
+    }
+
+    private static void addWords(String text, Set<String> target) {
+        if (text == null) {
+            return;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                target.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+    }
+
+    /**
+     * Ascending union of several ascending id streams, each id once.
+     */
+    private static class MergedIds implements Iterator<Long> {
+        private final PriorityQueue<Head> heads = new PriorityQueue<>();
+        private Long last;
+
+        MergedIds(List<Iterator<Long>> sources) {
+            for (Iterator<Long> source : sources) {
+                if (source.hasNext()) {
+                    heads.add(new Head(source.next(), source));
+                }
+            }
+            skipRepeats();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public Long next() {
+            Head head = heads.poll();
+            if (head == null) {
+                throw new NoSuchElementException();
+            }
+            last = head.id;
+            if (head.source.hasNext()) {
+                heads.add(new Head(head.source.next(), head.source));
+            }
+            skipRepeats();
+            return last;
+        }
+
+        private void skipRepeats() {
+            while (last != null && !heads.isEmpty() && heads.peek().id.equals(last)) {
+                Head head = heads.poll();
+                if (head.source.hasNext()) {
+                    heads.add(new Head(head.source.next(), head.source));
+                }
+            }
+        }
+
+        private static class Head implements Comparable<Head> {
+            private final Long id;
+            private final Iterator<Long> source;
+
+            Head(Long id, Iterator<Long> source) {
+                this.id = id;
+                this.source = source;
+            }
+
+            @Override
+            public int compareTo(Head other) {
+                return id.compareTo(other.id);
+            }
+        }
+    }
+}
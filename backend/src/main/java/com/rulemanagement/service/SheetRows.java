@@ -0,0 +1,258 @@
+package com.rulemanagement.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The decoded cells of a sheet's rows, kept in flat arrays instead of a string per cell. Numbers stay
+ * doubles until their text is asked for. Filled row by row by one thread, then only read.
+ */
+class SheetRows {
+
+    static final byte EMPTY = 0;
+    static final byte TEXT = 1;
+    static final byte NUMBER = 2;
+
+    private int[] rowNums = new int[64];
+    // Row i holds cells rowStarts[i] up to rowStarts[i + 1]
+    private int[] rowStarts = new int[65];
+    private int rowCount;
+
+    private byte[] kinds = new byte[256];
+    private double[] numbers;
+    private String[] texts;
+    private int cellCount;
+
+    private int openRowNum;
+    private int openWidth;
+
+    // Shared formulas whose master cell is in these rows, by shared index
+    private Map<Integer, SheetXmlDecoder.SharedFormula> sharedFormulas;
+    // Cells sharing the formula of a master cell outside these rows, holding their cached value until resolved
+    private List<SharedFormulaCell> sharedFormulaCells;
+
+    void startRow(int rowNum) {
+        openRowNum = rowNum;
+        openWidth = 0;
+    }
+
+    /**
+     * Cells filled so far in the row being read.
+     */
+    int openWidth() {
+        return openWidth;
+    }
+
+    void putText(int col, String value) {
+        int at = claim(col);
+        if (texts == null) {
+            texts = new String[kinds.length];
+        }
+        kinds[at] = TEXT;
+        texts[at] = value;
+    }
+
+    void putNumber(int col, double value) {
+        int at = claim(col);
+        if (numbers == null) {
+            numbers = new double[kinds.length];
+        }
+        kinds[at] = NUMBER;
+        numbers[at] = value;
+    }
+
+    void addSharedFormula(int sharedIndex, SheetXmlDecoder.SharedFormula formula) {
+        if (sharedFormulas == null) {
+            sharedFormulas = new HashMap<>();
+        }
+        sharedFormulas.put(sharedIndex, formula);
+    }
+
+    /**
+     * Puts the cached value of a cell sharing a formula whose master cell has not been read yet, for
+     * {@link #resolveSharedFormulas} to replace.
+     */
+    void putSharedFormula(int col, int sharedIndex, int rowNum, String cachedValue) {
+        putText(col, cachedValue);
+        if (sharedFormulaCells == null) {
+            sharedFormulaCells = new ArrayList<>();
+        }
+        sharedFormulaCells.add(new SharedFormulaCell(cellCount + openWidth - 1, sharedIndex, rowNum, col));
+    }
+
+    /**
+     * Fills in the cells sharing a formula from {@code sheetFormulas}, the shared formulas of the pieces
+     * of the sheet before this one, and adds this piece's own to it. Called on the pieces in order, so
+     * the text does not depend on where the sheet was cut. Cells whose master cell is never found keep
+     * their cached value.
+     */
+    void resolveSharedFormulas(Map<Integer, SheetXmlDecoder.SharedFormula> sheetFormulas) {
+        if (sharedFormulaCells != null) {
+            for (SharedFormulaCell cell : sharedFormulaCells) {
+                SheetXmlDecoder.SharedFormula formula = sheetFormulas.get(cell.sharedIndex);
+                if (formula != null) {
+                    texts[cell.at] = formula.at(cell.rowNum, cell.col);
+                }
+            }
+            sharedFormulaCells = null;
+        }
+        if (sharedFormulas != null) {
+            sheetFormulas.putAll(sharedFormulas);
+            sharedFormulas = null;
+        }
+    }
+
+    void endRow() {
+        if (rowCount + 1 == rowNums.length) {
+            rowNums = Arrays.copyOf(rowNums, rowNums.length * 2);
+            rowStarts = Arrays.copyOf(rowStarts, rowStarts.length * 2);
+        }
+        rowNums[rowCount] = openRowNum;
+        cellCount += openWidth;
+        rowStarts[++rowCount] = cellCount;
+        openWidth = 0;
+    }
+
+    private int claim(int col) {
+        // A cell left of one already read goes after it, as a list of cell texts would have it
+        int position = Math.max(col, openWidth);
+        openWidth = position + 1;
+        ensureCells(cellCount + openWidth);
+        return cellCount + position;
+    }
+
+    private void ensureCells(int needed) {
+        if (needed <= kinds.length) {
+            return;
+        }
+        int capacity = Math.max(needed, kinds.length * 2);
+        kinds = Arrays.copyOf(kinds, capacity);
+        if (numbers != null) {
+            numbers = Arrays.copyOf(numbers, capacity);
+        }
+        if (texts != null) {
+            texts = Arrays.copyOf(texts, capacity);
+        }
+    }
+
+    /**
+     * Appends the rows of another piece of the same sheet.
+     */
+    void addAll(SheetRows other) {
+        ensureCells(cellCount + other.cellCount);
+        System.arraycopy(other.kinds, 0, kinds, cellCount, other.cellCount);
+        if (other.numbers != null) {
+            if (numbers == null) {
+                numbers = new double[kinds.length];
+            }
+            System.arraycopy(other.numbers, 0, numbers, cellCount, other.cellCount);
+        }
+        if (other.texts != null) {
+            if (texts == null) {
+                texts = new String[kinds.length];
+            }
+            System.arraycopy(other.texts, 0, texts, cellCount, other.cellCount);
+        }
+
+        for (int i = 0; i < other.rowCount; i++) {
+            openRowNum = other.rowNums[i];
+            openWidth = other.width(i);
+            endRow();
+        }
+    }
+
+    /**
+     * A copy of rows {@code from} up to {@code to}.
+     */
+    SheetRows slice(int from, int to) {
+        SheetRows slice = new SheetRows();
+        int firstCell = rowStarts[from];
+        int cells = rowStarts[to] - firstCell;
+        slice.ensureCells(cells);
+        System.arraycopy(kinds, firstCell, slice.kinds, 0, cells);
+        if (numbers != null) {
+            slice.numbers = Arrays.copyOfRange(numbers, firstCell, firstCell + slice.kinds.length);
+        }
+        if (texts != null) {
+            slice.texts = Arrays.copyOfRange(texts, firstCell, firstCell + slice.kinds.length);
+        }
+
+        for (int i = from; i < to; i++) {
+            slice.openRowNum = rowNums[i];
+            slice.openWidth = width(i);
+            slice.endRow();
+        }
+        return slice;
+    }
+
+    int size() {
+        return rowCount;
+    }
+
+    int rowNum(int row) {
+        return rowNums[row];
+    }
+
+    int width(int row) {
+        return rowStarts[row + 1] - rowStarts[row];
+    }
+
+    byte kind(int row, int col) {
+        return col < width(row) ? kinds[rowStarts[row] + col] : EMPTY;
+    }
+
+    double number(int row, int col) {
+        return numbers[rowStarts[row] + col];
+    }
+
+    /**
+     * The cell's text as a string list of the row would have held it; missing cells are empty.
+     */
+    String text(int row, int col) {
+        switch (kind(row, col)) {
+            case TEXT:
+                return texts[rowStarts[row] + col];
+            case NUMBER:
+                return String.valueOf(number(row, col));
+            default:
+                return "";
+        }
+    }
+
+    boolean isBlank(int row, int col) {
+        byte kind = kind(row, col);
+        return kind == EMPTY || (kind == TEXT && texts[rowStarts[row] + col].trim().isEmpty());
+    }
+
+    /**
+     * The texts of the first row's cells in order, skipping columns with no cell at all.
+     */
+    List<String> headerCells() {
+        List<String> headers = new ArrayList<>();
+        if (rowCount > 0) {
+            for (int col = 0; col < width(0); col++) {
+                if (kind(0, col) != EMPTY) {
+                    headers.add(text(0, col));
+                }
+            }
+        }
+        return headers;
+    }
+
+    private static class SharedFormulaCell {
+        private final int at;
+        private final int sharedIndex;
+        private final int rowNum;
+        private final int col;
+
+        SharedFormulaCell(int at, int sharedIndex, int rowNum, int col) {
+            this.at = at;
+            this.sharedIndex = sharedIndex;
+            this.rowNum = rowNum;
+            this.col = col;
+        }
+    }
+}
@@ -0,0 +1,498 @@
+package com.rulemanagement.service;
+
+import org.apache.poi.ss.usermodel.BuiltinFormats;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.model.SharedStrings;
+import org.apache.poi.xssf.model.Styles;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Decodes the cells of a worksheet's XML straight into {@link SheetRows}. Shared strings and number
+ * formats are looked up in arrays built once per workbook, and numbers are parsed from the characters
+ * of their {@code <v>} element, so a cell costs no string of its own unless it holds text.
+ * <p>
+ * Reports the same cell text as POI's {@code XSSFSheetXMLHandler} did when asked for formulas rather
+ * than their results: numbers as {@code String.valueOf(double)}, dates through {@code Date.toString()},
+ * booleans as {@code true}/{@code false}. Cells sharing a formula get the master cell's formula with
+ * its relative references moved, as POI's {@code XSSFCell} shows them.
+ */
+class SheetXmlDecoder extends DefaultHandler {
+
+    private static final String SPREADSHEET_NS = XSSFRelation.NS_SPREADSHEETML;
+
+    // How a style shows numbers: as plain doubles, as dates, or as the raw text when it has no format
+    private static final byte PLAIN = 0;
+    private static final byte DATE = 1;
+    private static final byte RAW = 2;
+
+    private static final byte NUMBER_CELL = 0;
+    private static final byte BOOLEAN_CELL = 1;
+    private static final byte ERROR_CELL = 2;
+    private static final byte INLINE_STRING_CELL = 3;
+    private static final byte SHARED_STRING_CELL = 4;
+    private static final byte FORMULA_CELL = 5;
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * What every sheet of a workbook decodes against, safe to share between threads.
+     */
+    static class Lookups {
+        private final String[] sharedStrings;
+        private final byte[] styleModes;
+        // The mode of cells without a style attribute
+        private final byte defaultMode;
+
+        private Lookups(String[] sharedStrings, byte[] styleModes, byte defaultMode) {
+            this.sharedStrings = sharedStrings;
+            this.styleModes = styleModes;
+            this.defaultMode = defaultMode;
+        }
+
+        static Lookups of(Styles styles, SharedStrings sharedStrings) {
+            String[] strings = new String[sharedStrings != null ? sharedStrings.getUniqueCount() : 0];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = sharedStrings.getItemAt(i).toString();
+            }
+
+            byte[] modes = new byte[styles != null ? styles.getNumCellStyles() : 0];
+            for (int i = 0; i < modes.length; i++) {
+                XSSFCellStyle style = styles.getStyleAt(i);
+                if (style == null) {
+                    modes[i] = RAW;
+                    continue;
+                }
+                int formatIndex = style.getDataFormat();
+                String formatString = style.getDataFormatString();
+                if (formatString == null) {
+                    formatString = BuiltinFormats.getBuiltinFormat(formatIndex);
+                }
+                if (formatString == null) {
+                    modes[i] = RAW;
+                } else {
+                    modes[i] = DateUtil.isADateFormat(formatIndex, formatString) ? DATE : PLAIN;
+                }
+            }
+            return new Lookups(strings, modes, modes.length > 0 ? modes[0] : RAW);
+        }
+    }
+
+    /**
+     * A formula written once in its master cell and shared by the cells of a range. Each of those cells
+     * reads it with the relative references moved by the cell's offset from the master cell.
+     */
+    static class SharedFormula {
+        private static final Pattern CELL = Pattern.compile("(\\$?)([A-Za-z]{1,3})(\\$?)([0-9]{1,7})");
+        private static final Pattern COLUMN = Pattern.compile("(\\$?)([A-Za-z]{1,3})");
+        private static final Pattern ROW = Pattern.compile("(\\$?)([0-9]{1,7})");
+        private static final int MAX_ROW = 1048575;
+        private static final int MAX_COL = 16383;
+
+        private final String text;
+        private final int row;
+        private final int col;
+
+        SharedFormula(String text, int row, int col) {
+            this.text = text;
+            this.row = row;
+            this.col = col;
+        }
+
+        /**
+         * The formula as the cell at zero-based {@code cellRow} and {@code cellCol} reads it. References
+         * moved off the sheet become {@code #REF!}.
+         */
+        String at(int cellRow, int cellCol) {
+            int rowShift = cellRow - row;
+            int colShift = cellCol - col;
+            if (rowShift == 0 && colShift == 0) {
+                return text;
+            }
+
+            StringBuilder shifted = new StringBuilder(text.length() + 8);
+            int i = 0;
+            while (i < text.length()) {
+                char c = text.charAt(i);
+                int end;
+                if (c == '"' || c == '\'') {
+                    // String literals and quoted sheet names, where a doubled quote stands for itself
+                    end = i + 1;
+                    while (end < text.length()) {
+                        if (text.charAt(end++) == c) {
+                            if (end == text.length() || text.charAt(end) != c) {
+                                break;
+                            }
+                            end++;
+                        }
+                    }
+                    shifted.append(text, i, end);
+                } else if (c == '[') {
+                    end = text.indexOf(']', i);
+                    end = end < 0 ? text.length() : end + 1;
+                    shifted.append(text, i, end);
+                } else if (isTokenPart(c)) {
+                    end = i;
+                    while (end < text.length() && isTokenPart(text.charAt(end))) {
+                        end++;
+                    }
+                    shifted.append(shiftToken(i, end, rowShift, colShift));
+                } else {
+                    end = i + 1;
+                    shifted.append(c);
+                }
+                i = end;
+            }
+            return shifted.toString();
+        }
+
+        private String shiftToken(int start, int end, int rowShift, int colShift) {
+            String token = text.substring(start, end);
+            char next = end < text.length() ? text.charAt(end) : 0;
+            if (next == '(' || next == '!') {
+                // A function or a sheet name
+                return token;
+            }
+            boolean range = next == ':' || (start > 0 && text.charAt(start - 1) == ':');
+
+            Matcher cell = CELL.matcher(token);
+            if (cell.matches()) {
+                int tokenCol = CellReference.convertColStringToIndex(cell.group(2));
+                if (tokenCol > MAX_COL) {
+                    return token;
+                }
+                String column = shiftColumn(cell.group(1), tokenCol, colShift);
+                String rowNum = shiftRow(cell.group(3), Integer.parseInt(cell.group(4)) - 1, rowShift);
+                return column != null && rowNum != null ? column + rowNum : "#REF!";
+            }
+            Matcher column = COLUMN.matcher(token);
+            if (range && column.matches()) {
+                int tokenCol = CellReference.convertColStringToIndex(column.group(2));
+                String shiftedColumn = tokenCol <= MAX_COL ? shiftColumn(column.group(1), tokenCol, colShift) : token;
+                return shiftedColumn != null ? shiftedColumn : "#REF!";
+            }
+            Matcher rowOnly = ROW.matcher(token);
+            if (range && rowOnly.matches()) {
+                String shiftedRow = shiftRow(rowOnly.group(1), Integer.parseInt(rowOnly.group(2)) - 1, rowShift);
+                return shiftedRow != null ? shiftedRow : "#REF!";
+            }
+            return token;
+        }
+
+        private static String shiftColumn(String anchor, int tokenCol, int colShift) {
+            int shifted = anchor.isEmpty() ? tokenCol + colShift : tokenCol;
+            return shifted >= 0 && shifted <= MAX_COL ? anchor + CellReference.convertNumToColString(shifted) : null;
+        }
+
+        private static String shiftRow(String anchor, int tokenRow, int rowShift) {
+            int shifted = anchor.isEmpty() ? tokenRow + rowShift : tokenRow;
+            return shifted >= 0 && shifted <= MAX_ROW ? anchor + (shifted + 1) : null;
+        }
+
+        private static boolean isTokenPart(char c) {
+            return Character.isLetterOrDigit(c) || c == '$' || c == '_' || c == '.';
+        }
+    }
+
+    private final Lookups lookups;
+    private final SheetRows rows;
+    // Shared formulas whose master cell has been read, by shared index
+    private final Map<Integer, SharedFormula> sharedFormulas = new HashMap<>();
+
+    private final StringBuilder value = new StringBuilder(64);
+    private final StringBuilder formula = new StringBuilder(64);
+    private boolean valueOpen;
+    private boolean inlineOpen;
+    private boolean formulaOpen;
+
+    private int nextRowNum;
+    private int col;
+    private byte cellType;
+    private byte numberMode;
+    // The shared index of the cell's formula, and whether the cell only refers to it
+    private int sharedIndex;
+    private boolean sharesFormula;
+
+    SheetXmlDecoder(Lookups lookups, SheetRows rows) {
+        this.lookups = lookups;
+        this.rows = rows;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) {
+        if (!SPREADSHEET_NS.equals(uri)) {
+            return;
+        }
+        switch (localName) {
+            case "row":
+                String rowRef = attributes.getValue("r");
+                int rowNum = rowRef != null ? Integer.parseInt(rowRef) - 1 : nextRowNum;
+                rows.startRow(rowNum);
+                nextRowNum = rowNum + 1;
+                break;
+            case "c":
+                startCell(attributes);
+                break;
+            case "v":
+                valueOpen = true;
+                if (!inlineOpen) {
+                    value.setLength(0);
+                }
+                break;
+            case "t":
+                if (inlineOpen) {
+                    valueOpen = true;
+                }
+                break;
+            case "is":
+                inlineOpen = true;
+                value.setLength(0);
+                break;
+            case "f":
+                formula.setLength(0);
+                if (cellType == NUMBER_CELL) {
+                    cellType = FORMULA_CELL;
+                }
+                String sharedId = "shared".equals(attributes.getValue("t")) ? attributes.getValue("si") : null;
+                sharedIndex = sharedId != null ? parseIndex(sharedId) : -1;
+                // Cells sharing another cell's formula carry no text of their own
+                sharesFormula = sharedIndex >= 0 && attributes.getValue("ref") == null;
+                formulaOpen = !sharesFormula;
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void startCell(Attributes attributes) {
+        String cellRef = attributes.getValue("r");
+        col = cellRef != null ? columnOf(cellRef) : rows.openWidth();
+        formula.setLength(0);
+        sharedIndex = -1;
+        sharesFormula = false;
+
+        String type = attributes.getValue("t");
+        if (type == null || "n".equals(type)) {
+            cellType = NUMBER_CELL;
+            String style = attributes.getValue("s");
+            if (style == null) {
+                numberMode = lookups.defaultMode;
+            } else {
+                int styleIndex = Integer.parseInt(style);
+                numberMode = styleIndex < lookups.styleModes.length ? lookups.styleModes[styleIndex] : RAW;
+            }
+        } else if ("b".equals(type)) {
+            cellType = BOOLEAN_CELL;
+        } else if ("e".equals(type)) {
+            cellType = ERROR_CELL;
+        } else if ("inlineStr".equals(type)) {
+            cellType = INLINE_STRING_CELL;
+        } else if ("s".equals(type)) {
+            cellType = SHARED_STRING_CELL;
+        } else if ("str".equals(type)) {
+            cellType = FORMULA_CELL;
+        } else {
+            cellType = NUMBER_CELL;
+            numberMode = RAW;
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) {
+        if (!SPREADSHEET_NS.equals(uri)) {
+            return;
+        }
+        switch (localName) {
+            case "v":
+                valueOpen = false;
+                if (!inlineOpen) {
+                    endCell();
+                }
+                break;
+            case "t":
+                if (inlineOpen) {
+                    valueOpen = false;
+                }
+                break;
+            case "is":
+                inlineOpen = false;
+                valueOpen = false;
+                endCell();
+                break;
+            case "f":
+                formulaOpen = false;
+                if (sharedIndex >= 0 && !sharesFormula) {
+                    SharedFormula shared = new SharedFormula(formula.toString(), nextRowNum - 1, col);
+                    sharedFormulas.put(sharedIndex, shared);
+                    rows.addSharedFormula(sharedIndex, shared);
+                }
+                break;
+            case "row":
+                rows.endRow();
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) {
+        if (valueOpen) {
+            value.append(ch, start, length);
+        }
+        if (formulaOpen) {
+            formula.append(ch, start, length);
+        }
+    }
+
+    private void endCell() {
+        switch (cellType) {
+            case BOOLEAN_CELL:
+                rows.putText(col, value.length() > 0 && value.charAt(0) == '0' ? "false" : "true");
+                break;
+            case ERROR_CELL:
+                rows.putText(col, "ERROR:" + value);
+                break;
+            case FORMULA_CELL:
+                if (!sharesFormula) {
+                    rows.putText(col, formula.toString());
+                } else if (sharedFormulas.containsKey(sharedIndex)) {
+                    rows.putText(col, sharedFormulas.get(sharedIndex).at(nextRowNum - 1, col));
+                } else {
+                    // The master cell is in an earlier piece of the sheet
+                    rows.putSharedFormula(col, sharedIndex, nextRowNum - 1, value.toString());
+                }
+                break;
+            case INLINE_STRING_CELL:
+                rows.putText(col, value.toString());
+                break;
+            case SHARED_STRING_CELL:
+                int index = parseIndex(value);
+                rows.putText(col, index >= 0 && index < lookups.sharedStrings.length ? lookups.sharedStrings[index] : "");
+                break;
+            default:
+                endNumberCell();
+                break;
+        }
+    }
+
+    private void endNumberCell() {
+        if (value.length() == 0 || numberMode == RAW) {
+            rows.putText(col, value.toString());
+            return;
+        }
+        double number = parseNumber(value);
+        if (numberMode == DATE && DateUtil.isValidExcelDate(number)) {
+            rows.putText(col, DateUtil.getJavaDate(number).toString());
+        } else {
+            rows.putNumber(col, number);
+        }
+    }
+
+    /**
+     * The zero-based column of a cell reference such as {@code AB12}.
+     */
+    static int columnOf(String cellRef) {
+        int col = 0;
+        for (int i = 0; i < cellRef.length(); i++) {
+            char c = cellRef.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                col = col * 26 + (c - 'A' + 1);
+            } else if (c >= 'a' && c <= 'z') {
+                col = col * 26 + (c - 'a' + 1);
+            } else if (c != '$') {
+                break;
+            }
+        }
+        return col - 1;
+    }
+
+    private static int parseIndex(CharSequence text) {
+        if (text.length() == 0 || text.length() > 9) {
+            return -1;
+        }
+        int index = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            index = index * 10 + (c - '0');
+        }
+        return index;
+    }
+
+    /**
+     * Parses a decimal number in place. Values with at most 2^53 as their digits and a power of ten
+     * up to 22 come out of a single rounded multiply or divide, which is exactly what
+     * {@link Double#parseDouble} returns; anything else is handed to it.
+     */
+    static double parseNumber(CharSequence text) {
+        int length = text.length();
+        int i = 0;
+        boolean negative = false;
+        if (i < length && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+
+        long digits = 0;
+        int digitCount = 0;
+        int exponent = 0;
+        boolean point = false;
+        boolean exact = true;
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (digits > (1L << 53) / 10) {
+                    exact = false;
+                    break;
+                }
+                digits = digits * 10 + (c - '0');
+                digitCount++;
+                if (point) {
+                    exponent--;
+                }
+            } else if (c == '.' && !point) {
+                point = true;
+            } else {
+                break;
+            }
+        }
+
+        if (exact && i < length && (text.charAt(i) == 'E' || text.charAt(i) == 'e')) {
+            int at = i + 1;
+            boolean negativeExponent = false;
+            if (at < length && (text.charAt(at) == '-' || text.charAt(at) == '+')) {
+                negativeExponent = text.charAt(at) == '-';
+                at++;
+            }
+            int written = 0;
+            int exponentDigits = 0;
+            for (; at < length && text.charAt(at) >= '0' && text.charAt(at) <= '9' && written < 1000; at++) {
+                written = written * 10 + (text.charAt(at) - '0');
+                exponentDigits++;
+            }
+            exponent += negativeExponent ? -written : written;
+            i = exponentDigits > 0 ? at : -1;
+        }
+
+        if (!exact || i != length || digitCount == 0 || digits > (1L << 53)
+                || exponent < -22 || exponent > 22) {
+            return Double.parseDouble(text.toString());
+        }
+        double number = exponent >= 0 ? digits * POWERS_OF_TEN[exponent] : digits / POWERS_OF_TEN[-exponent];
+        return negative ? -number : number;
+    }
+}
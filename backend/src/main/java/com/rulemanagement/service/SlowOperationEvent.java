@@ -0,0 +1,33 @@
+package com.rulemanagement.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for a fetch, validate or save request that took longer than the slow
+ * operation threshold. Its stages are recorded alongside as {@link PipelineStageEvent}s with the same
+ * trace id.
+ */
+@Name("com.rulemanagement.SlowOperation")
+@Label("Slow Rule Operation")
+@Category("Rule Management")
+@Description("A rule request over the slow operation threshold")
+@StackTrace(false)
+class SlowOperationEvent extends Event {
+
+    @Label("Trace Id")
+    String traceId;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Subject")
+    String subject;
+
+    @Label("Stages")
+    String stages;
+}
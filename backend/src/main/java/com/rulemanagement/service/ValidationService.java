@@ -1,35 +1,194 @@
 package com.rulemanagement.service;
 
 import com.rulemanagement.model.ValidationResult;
+import jakarta.annotation.PostConstruct;
+import org.drools.compiler.compiler.DescrBuildError;
+import org.drools.decisiontable.InputType;
 import org.drools.decisiontable.SpreadsheetCompiler;
+import org.drools.drl.ast.descr.RuleDescr;
+import org.kie.api.KieBase;
+import org.kie.api.io.ResourceType;
+import org.kie.internal.builder.KnowledgeBuilder;
+import org.kie.internal.builder.KnowledgeBuilderFactory;
+import org.kie.internal.builder.KnowledgeBuilderResult;
+import org.kie.internal.builder.ResultSeverity;
+import org.kie.internal.io.ResourceFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Service
 public class ValidationService {
 
+    private static final int MAX_CACHED_COMPILATIONS = 16;
+    private static final Pattern RULE_DECLARATION = Pattern.compile("^\\s*rule\\s+\"([^\"]+)\"");
+    private static final Pattern RULE_ROW_SUFFIX = Pattern.compile("_(\\d+)$");
+
+    @Autowired
+    private PipelineMetrics metrics;
+
+    private PipelineMetrics.CacheCounter cacheCounter;
+
+    private final Map<String, CompiledRules> compilationCache = Collections.synchronizedMap(
+        new LinkedHashMap<String, CompiledRules>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompiledRules> eldest) {
+                return size() > MAX_CACHED_COMPILATIONS;
+            }
+        });
+
+    @PostConstruct
+    void registerMetrics() {
+        cacheCounter = metrics.cache("compile");
+    }
+
     public ValidationResult validateDroolsFormat(File excelFile) {
+        ValidationResult result = compile(excelFile).getResult();
+        return new ValidationResult(result.isValid(),
+            new ArrayList<>(result.getErrors()), new ArrayList<>(result.getWarnings()));
+    }
+
+    public CompiledRules compile(File excelFile) {
+        byte[] workbookBytes;
+        try {
+            workbookBytes = Files.readAllBytes(excelFile.toPath());
+        } catch (IOException e) {
+            List<String> errors = new ArrayList<>();
+            errors.add("Drools validation failed: " + e.getMessage());
+            return new CompiledRules(new ValidationResult(false, errors, null), null);
+        }
+
+        String contentHash = sha256(workbookBytes);
+        CompiledRules cached = compilationCache.get(contentHash);
+        if (cached != null) {
+            cacheCounter.hit();
+            return cached;
+        }
+        cacheCounter.miss();
+
+        CompiledRules compiled;
+        try (PipelineMetrics.Stage stage = metrics.stage("drools.compile")) {
+            compiled = compile(workbookBytes);
+            stage.setBytes(workbookBytes.length);
+            if (compiled.getKieBase() != null) {
+                stage.setRows(compiled.getKieBase().getKiePackages().stream()
+                    .mapToLong(kiePackage -> kiePackage.getRules().size())
+                    .sum());
+            }
+            stage.succeeded();
+        }
+        compilationCache.put(contentHash, compiled);
+        return compiled;
+    }
+
+    private CompiledRules compile(byte[] workbookBytes) {
         List<String> errors = new ArrayList<>();
         List<String> warnings = new ArrayList<>();
+        KieBase kieBase = null;
 
-        try (FileInputStream fis = new FileInputStream(excelFile)) {
+        try {
             SpreadsheetCompiler compiler = new SpreadsheetCompiler();
-            String drl = compiler.compile(fis, "xls");
+            String drl = compiler.compile(new ByteArrayInputStream(workbookBytes), InputType.XLS);
 
             if (drl == null || drl.isEmpty()) {
                 errors.add("Failed to compile Excel file to Drools DRL");
-            } else if (!drl.contains("rule ")) {
-                warnings.add("DRL does not contain any rule definitions");
+            } else {
+                if (!drl.contains("rule ")) {
+                    warnings.add("DRL does not contain any rule definitions");
+                }
+
+                KnowledgeBuilder builder = KnowledgeBuilderFactory.newKnowledgeBuilder();
+                builder.add(ResourceFactory.newByteArrayResource(drl.getBytes(StandardCharsets.UTF_8)),
+                    ResourceType.DRL);
+
+                String[] drlLines = drl.split("\n");
+                for (KnowledgeBuilderResult error : builder.getResults(ResultSeverity.ERROR)) {
+                    errors.add(describe(error, drlLines));
+                }
+                for (KnowledgeBuilderResult warning : builder.getResults(ResultSeverity.WARNING)) {
+                    warnings.add(describe(warning, drlLines));
+                }
+
+                if (errors.isEmpty()) {
+                    kieBase = builder.newKieBase();
+                }
             }
 
         } catch (Exception e) {
             errors.add("Drools validation failed: " + e.getMessage());
         }
 
-        return new ValidationResult(errors.isEmpty(), errors, warnings);
+        return new CompiledRules(new ValidationResult(errors.isEmpty(), errors, warnings), kieBase);
+    }
+
+    private String describe(KnowledgeBuilderResult result, String[] drlLines) {
+        String text = result.getMessage() != null ? result.getMessage().trim() : "Unknown compiler error";
+        String ruleName = null;
+        if (result instanceof DescrBuildError
+                && ((DescrBuildError) result).getParentDescr() instanceof RuleDescr) {
+            ruleName = ((RuleDescr) ((DescrBuildError) result).getParentDescr()).getName();
+        } else if (result.getLines() != null && result.getLines().length > 0) {
+            ruleName = enclosingRuleName(drlLines, result.getLines()[0]);
+        }
+        if (ruleName == null) {
+            return text;
+        }
+
+        Matcher rowSuffix = RULE_ROW_SUFFIX.matcher(ruleName);
+        if (rowSuffix.find()) {
+            return "Rule '" + ruleName + "' (row " + rowSuffix.group(1) + "): " + text;
+        }
+        return "Rule '" + ruleName + "': " + text;
+    }
+
+    private String enclosingRuleName(String[] drlLines, int line) {
+        for (int i = Math.min(line, drlLines.length) - 1; i >= 0; i--) {
+            Matcher declaration = RULE_DECLARATION.matcher(drlLines[i]);
+            if (declaration.find()) {
+                return declaration.group(1);
+            }
+        }
+        return null;
+    }
+
+    private String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    public static class CompiledRules {
+        private final ValidationResult result;
+        private final KieBase kieBase;
+
+        CompiledRules(ValidationResult result, KieBase kieBase) {
+            this.result = result;
+            this.kieBase = kieBase;
+        }
+
+        public ValidationResult getResult() {
+            return result;
+        }
+
+        public KieBase getKieBase() {
+            return kieBase;
+        }
     }
 }
@@ -0,0 +1,757 @@
+package com.rulemanagement.service;
+
+import com.rulemanagement.model.Rule;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+/**
+ * Reads the sheets of a workbook into rules on a fork-join pool. Each sheet's XML is streamed in pieces
+ * cut at row boundaries, growing from {@link #FIRST_PIECE_BYTES} to {@link #SPLIT_BYTES}, and the pieces
+ * are decoded side by side, a bounded number at a time. Rows become rules in fixed-size runs, which are
+ * handed on in sheet and row order as soon as they finish and numbered as they go, so ids do not depend
+ * on scheduling and the first rules go out before the rest of the workbook is read.
+ * <p>
+ * The first sheet keeps its long-standing reading: its first row holds the headers and every row after
+ * it is a rule that can be written back to the row it came from. Further sheets are read as Drools
+ * RuleTable blocks, which are tagged on each rule along with the sheet.
+ */
+class WorkbookParser {
+
+    // Pieces start small so the first rules go out quickly, then double up to SPLIT_BYTES
+    static final int FIRST_PIECE_BYTES = 64 << 10;
+    static final int SPLIT_BYTES = 4 << 20;
+    static final int ROWS_PER_TASK = 4096;
+
+    private static final String RULE_TABLE = "RuleTable";
+    private static final int LABEL_OFFSET = 4;
+    private static final byte[] SHEET_DATA = ascii("<sheetData");
+    private static final byte[] SHEET_DATA_END = ascii("</sheetData>");
+    private static final byte[] ROW = ascii("<row");
+    private static final byte[] ROW_NUMBER = ascii(" r=\"");
+    private static final byte[] CLOSE = ascii("</sheetData></worksheet>");
+    private static final byte[] WORKSHEET = ascii("<worksheet");
+    private static final byte[] TAG_END = ascii(">");
+
+    private static final byte CONDITION = 0;
+    private static final byte ACTION = 1;
+    private static final byte NAME = 2;
+    private static final byte DESCRIPTION = 3;
+
+    private final ForkJoinPool pool;
+    private final int firstPieceBytes;
+    private final int splitBytes;
+    // Pieces being decoded, and runs being built, before the oldest is waited for
+    private final int maxPieces;
+    private final int maxRuns;
+
+    WorkbookParser(ForkJoinPool pool) {
+        this(pool, FIRST_PIECE_BYTES, SPLIT_BYTES);
+    }
+
+    WorkbookParser(ForkJoinPool pool, int firstPieceBytes, int splitBytes) {
+        this.pool = pool;
+        this.firstPieceBytes = firstPieceBytes;
+        this.splitBytes = splitBytes;
+        this.maxPieces = pool.getParallelism() + 1;
+        this.maxRuns = pool.getParallelism() * 4;
+    }
+
+    /**
+     * One sheet's content: either its XML, streamed and decoded on the pool, or rows read up front.
+     */
+    static class SheetSource {
+        private final String name;
+        private final InputStream xml;
+        private final SheetRows rows;
+
+        private SheetSource(String name, InputStream xml, SheetRows rows) {
+            this.name = name;
+            this.xml = xml;
+            this.rows = rows;
+        }
+
+        static SheetSource xml(String name, InputStream xml) {
+            return new SheetSource(name, xml, null);
+        }
+
+        static SheetSource rows(String name, SheetRows rows) {
+            return new SheetSource(name, null, rows);
+        }
+    }
+
+    /**
+     * Parses the sheets in order, reading each one only once the previous one has been read. XML
+     * streams are closed once read.
+     */
+    void parse(Iterator<SheetSource> sheets, SheetXmlDecoder.Lookups lookups, Consumer<Rule> ruleConsumer)
+            throws IOException {
+        Deque<Piece> pieces = new ArrayDeque<>();
+        Runs runs = new Runs(ruleConsumer);
+        try {
+            boolean first = true;
+            while (sheets.hasNext()) {
+                SheetSource sheet = sheets.next();
+                RowHandler handler = first ? new FirstSheet(sheet.name, runs) : new RuleTableSheet(sheet.name, runs);
+                first = false;
+
+                Map<Integer, SheetXmlDecoder.SharedFormula> sharedFormulas = new HashMap<>();
+
+                if (sheet.xml == null) {
+                    pieces.add(new Piece(handler, sharedFormulas, pool.submit(() -> sheet.rows)));
+                    continue;
+                }
+                try (InputStream xml = sheet.xml) {
+                    SheetPieces sheetPieces = new SheetPieces(xml, firstPieceBytes, splitBytes);
+                    InputStream part;
+                    while ((part = sheetPieces.next()) != null) {
+                        InputStream piece = part;
+                        pieces.add(new Piece(handler, sharedFormulas, pool.submit(() -> readRows(piece, lookups))));
+                        while (pieces.size() > maxPieces || (!pieces.isEmpty() && pieces.peek().rows.isDone())) {
+                            pieces.poll().accept();
+                        }
+                        runs.emitFinished();
+                    }
+                }
+            }
+
+            while (!pieces.isEmpty()) {
+                pieces.poll().accept();
+                runs.emitFinished();
+            }
+            runs.emitAll();
+        } finally {
+            pieces.forEach(piece -> piece.rows.cancel(false));
+            runs.cancel();
+        }
+    }
+
+    private static class Piece {
+        private final RowHandler handler;
+        // Shared formulas of the sheet's pieces handed on so far
+        private final Map<Integer, SheetXmlDecoder.SharedFormula> sharedFormulas;
+        private final ForkJoinTask<SheetRows> rows;
+
+        Piece(RowHandler handler, Map<Integer, SheetXmlDecoder.SharedFormula> sharedFormulas,
+                ForkJoinTask<SheetRows> rows) {
+            this.handler = handler;
+            this.sharedFormulas = sharedFormulas;
+            this.rows = rows;
+        }
+
+        void accept() throws IOException {
+            SheetRows decoded = join(rows);
+            decoded.resolveSharedFormulas(sharedFormulas);
+            handler.accept(decoded);
+        }
+    }
+
+    /**
+     * Takes the decoded pieces of one sheet, in order, and submits the runs of rules they hold.
+     */
+    private interface RowHandler {
+        void accept(SheetRows rows) throws IOException;
+    }
+
+    /**
+     * Runs of rules in the order they are to be handed on.
+     */
+    private class Runs {
+        private final Consumer<Rule> ruleConsumer;
+        private final Deque<ForkJoinTask<List<Rule>>> pending = new ArrayDeque<>();
+        private long nextId = 1;
+
+        Runs(Consumer<Rule> ruleConsumer) {
+            this.ruleConsumer = ruleConsumer;
+        }
+
+        void submit(Callable<List<Rule>> run) throws IOException {
+            pending.add(pool.submit(run));
+            while (pending.size() > maxRuns) {
+                emit(pending.poll());
+            }
+        }
+
+        void emitFinished() throws IOException {
+            while (!pending.isEmpty() && pending.peek().isDone()) {
+                emit(pending.poll());
+            }
+        }
+
+        void emitAll() throws IOException {
+            while (!pending.isEmpty()) {
+                emit(pending.poll());
+            }
+        }
+
+        void cancel() {
+            pending.forEach(run -> run.cancel(false));
+        }
+
+        private void emit(ForkJoinTask<List<Rule>> run) throws IOException {
+            for (Rule rule : join(run)) {
+                rule.setId(nextId++);
+                if (rule.getName() == null || rule.getName().trim().isEmpty()) {
+                    rule.setName("Rule " + rule.getId());
+                }
+                ruleConsumer.accept(rule);
+            }
+        }
+    }
+
+    private class FirstSheet implements RowHandler {
+        private final String sheetName;
+        private final Runs runs;
+        private List<String> headers;
+        private byte[] roles;
+        // The RuleTable block the rows read so far fall under
+        private String tableName;
+
+        FirstSheet(String sheetName, Runs runs) {
+            this.sheetName = sheetName;
+            this.runs = runs;
+        }
+
+        @Override
+        public void accept(SheetRows rows) throws IOException {
+            int from = 0;
+            if (headers == null) {
+                if (rows.size() == 0) {
+                    return;
+                }
+                headers = rows.headerCells();
+                roles = rolesOf(headers);
+                from = 1;
+            }
+
+            // Which block each row falls under, known only by walking down from the top
+            String[] tableNames = new String[rows.size()];
+            for (int row = from; row < rows.size(); row++) {
+                String marker = tableNameOf(rows, row);
+                if (marker != null) {
+                    tableName = marker;
+                }
+                tableNames[row] = tableName;
+            }
+
+            List<String> headers = this.headers;
+            byte[] roles = this.roles;
+            for (int start = from; start < rows.size(); start += ROWS_PER_TASK) {
+                int runStart = start;
+                int runEnd = Math.min(rows.size(), start + ROWS_PER_TASK);
+                runs.submit(() -> {
+                    RuleTable table = new RuleTable();
+                    List<Rule> rules = new ArrayList<>(runEnd - runStart);
+                    String sheetTag = table.intern(sheetName);
+                    for (int row = runStart; row < runEnd; row++) {
+                        Rule rule = toRule(table, rows, row, headers, roles);
+                        rule.setSheet(sheetTag);
+                        rule.setTable(table.intern(tableNames[row]));
+                        rules.add(rule);
+                    }
+                    return rules;
+                });
+            }
+        }
+    }
+
+    /**
+     * What each of the first sheet's header columns holds, decided once from the header's wording.
+     */
+    static byte[] rolesOf(List<String> headers) {
+        byte[] roles = new byte[headers.size()];
+        for (int i = 0; i < roles.length; i++) {
+            String header = headers.get(i).toLowerCase();
+            if (header.contains("name") || header.contains("rule")) {
+                roles[i] = NAME;
+            } else if (header.contains("description")) {
+                roles[i] = DESCRIPTION;
+            } else if (header.contains("condition") || header.contains("when") || header.contains("if")) {
+                roles[i] = CONDITION;
+            } else if (header.contains("action") || header.contains("then") || header.contains("do")) {
+                roles[i] = ACTION;
+            } else {
+                roles[i] = CONDITION;
+            }
+        }
+        return roles;
+    }
+
+    private static Rule toRule(RuleTable table, SheetRows rows, int row, List<String> headers, byte[] roles) {
+        Rule rule = table.addRow();
+        rule.setSourceRow(rows.rowNum(row));
+
+        int width = Math.min(headers.size(), rows.width(row));
+        for (int col = 0; col < width; col++) {
+            switch (roles[col]) {
+                case NAME:
+                    rule.setName(table.intern(rows.text(row, col)));
+                    break;
+                case DESCRIPTION:
+                    rule.setDescription(table.intern(rows.text(row, col)));
+                    break;
+                default:
+                    setValue(table, rule, roles[col], headers.get(col), rows, row, col);
+                    break;
+            }
+        }
+
+        return rule;
+    }
+
+    private static void setValue(RuleTable table, Rule rule, byte role, String header, SheetRows rows, int row,
+            int col) {
+        boolean number = rows.kind(row, col) == SheetRows.NUMBER;
+        if (role == ACTION) {
+            if (number) {
+                table.setActionNumberText(rule, header, rows.number(row, col));
+            } else {
+                table.setAction(rule, header, rows.text(row, col));
+            }
+        } else if (number) {
+            table.setConditionNumberText(rule, header, rows.number(row, col));
+        } else {
+            table.setCondition(rule, header, rows.text(row, col));
+        }
+    }
+
+    /**
+     * Finds the RuleTable blocks of a sheet the way Drools lays them out: the RuleTable row, then the
+     * CONDITION/ACTION keywords, object types, code and column labels, then one rule per row until the
+     * first blank row. A block may run on from one piece of the sheet into the next.
+     */
+    private class RuleTableSheet implements RowHandler {
+        private final String sheetName;
+        private final Runs runs;
+        // Rows of a block whose header goes on in the next piece
+        private SheetRows carried;
+        // The block the previous piece ended in, still taking rules
+        private String openTable;
+        private BlockColumns openColumns;
+        private int expectedRow;
+
+        RuleTableSheet(String sheetName, Runs runs) {
+            this.sheetName = sheetName;
+            this.runs = runs;
+        }
+
+        @Override
+        public void accept(SheetRows rows) throws IOException {
+            if (carried != null) {
+                carried.addAll(rows);
+                rows = carried;
+                carried = null;
+            }
+
+            int i = 0;
+            if (openTable != null) {
+                i = blockEnd(rows, 0);
+                submitBlock(openTable, openColumns, rows, 0, i);
+                if (i == rows.size()) {
+                    return;
+                }
+                openTable = null;
+            }
+
+            while (i < rows.size()) {
+                String tableName = tableNameOf(rows, i);
+                if (tableName == null) {
+                    i++;
+                    continue;
+                }
+
+                int markerRow = rows.rowNum(i);
+                int[] headerRows = {-1, -1, -1, -1, -1};
+                int next = i + 1;
+                while (next < rows.size() && rows.rowNum(next) <= markerRow + LABEL_OFFSET) {
+                    headerRows[rows.rowNum(next) - markerRow] = next;
+                    next++;
+                }
+                if (next == rows.size() && rows.rowNum(next - 1) < markerRow + LABEL_OFFSET) {
+                    carried = rows.slice(i, rows.size());
+                    return;
+                }
+                if (headerRows[1] < 0) {
+                    i = next;
+                    continue;
+                }
+                BlockColumns columns = columnsOf(rows, headerRows, firstValueColumn(rows, i));
+
+                expectedRow = markerRow + LABEL_OFFSET + 1;
+                int end = blockEnd(rows, next);
+                submitBlock(tableName, columns, rows, next, end);
+                if (end == rows.size()) {
+                    openTable = tableName;
+                    openColumns = columns;
+                    return;
+                }
+                i = end;
+            }
+        }
+
+        /**
+         * The first row from {@code from} on that no longer belongs to the block, moving the expected
+         * row number along.
+         */
+        private int blockEnd(SheetRows rows, int from) {
+            int end = from;
+            while (end < rows.size() && rows.rowNum(end) == expectedRow
+                    && firstValueColumn(rows, end) >= 0 && tableNameOf(rows, end) == null) {
+                end++;
+                expectedRow++;
+            }
+            return end;
+        }
+
+        private void submitBlock(String tableName, BlockColumns columns, SheetRows rows, int from, int to)
+                throws IOException {
+            for (int start = from; start < to; start += ROWS_PER_TASK) {
+                int runStart = start;
+                int runEnd = Math.min(to, start + ROWS_PER_TASK);
+                runs.submit(() -> {
+                    RuleTable table = new RuleTable();
+                    List<Rule> rules = new ArrayList<>(runEnd - runStart);
+                    for (int row = runStart; row < runEnd; row++) {
+                        rules.add(toBlockRule(table, sheetName, tableName, columns, rows, row));
+                    }
+                    return rules;
+                });
+            }
+        }
+    }
+
+    private static Rule toBlockRule(RuleTable table, String sheetName, String tableName, BlockColumns columns,
+            SheetRows rows, int row) {
+        Rule rule = table.addRow();
+        rule.setSheet(table.intern(sheetName));
+        rule.setTable(table.intern(tableName));
+
+        for (int i = 0; i < columns.cols.length; i++) {
+            int col = columns.cols[i];
+            byte kind = rows.kind(row, col);
+            if (kind == SheetRows.EMPTY || (kind == SheetRows.TEXT && rows.text(row, col).isEmpty())) {
+                continue;
+            }
+            switch (columns.roles[i]) {
+                case NAME:
+                    rule.setName(table.intern(rows.text(row, col)));
+                    break;
+                case DESCRIPTION:
+                    rule.setDescription(table.intern(rows.text(row, col)));
+                    break;
+                default:
+                    setValue(table, rule, columns.roles[i], columns.headers[i], rows, row, col);
+                    break;
+            }
+        }
+
+        if (rule.getName() == null || rule.getName().trim().isEmpty()) {
+            rule.setName(tableName + "_" + (rows.rowNum(row) + 1));
+        }
+        return rule;
+    }
+
+    private static class BlockColumns {
+        private final int[] cols;
+        private final byte[] roles;
+        private final String[] headers;
+
+        BlockColumns(int[] cols, byte[] roles, String[] headers) {
+            this.cols = cols;
+            this.roles = roles;
+            this.headers = headers;
+        }
+    }
+
+    /**
+     * The columns of a block that carry rule data, named by their label, else their code, else their
+     * object type. Other attribute columns such as PRIORITY are left out.
+     */
+    private static BlockColumns columnsOf(SheetRows rows, int[] headerRows, int firstCol) {
+        int keywords = headerRows[1];
+        List<Integer> cols = new ArrayList<>();
+        List<Byte> roles = new ArrayList<>();
+        List<String> headers = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+
+        for (int col = Math.max(firstCol, 0); col < rows.width(keywords); col++) {
+            Byte role = roleOf(rows.text(keywords, col).trim().toUpperCase(Locale.ROOT));
+            if (role == null) {
+                continue;
+            }
+            String header = "";
+            for (int offset = LABEL_OFFSET; offset > 1 && header.isEmpty(); offset--) {
+                header = headerRows[offset] >= 0 ? rows.text(headerRows[offset], col).trim() : "";
+            }
+            if (header.isEmpty()) {
+                header = rows.text(keywords, col).trim();
+            }
+            if (!seen.add(role + header)) {
+                header = header + " (" + CellReference.convertNumToColString(col) + ")";
+            }
+            cols.add(col);
+            roles.add(role);
+            headers.add(header);
+        }
+
+        int[] colArray = new int[cols.size()];
+        byte[] roleArray = new byte[roles.size()];
+        for (int i = 0; i < colArray.length; i++) {
+            colArray[i] = cols.get(i);
+            roleArray[i] = roles.get(i);
+        }
+        return new BlockColumns(colArray, roleArray, headers.toArray(new String[0]));
+    }
+
+    private static Byte roleOf(String keyword) {
+        switch (keyword) {
+            case "CONDITION":
+            case "C":
+                return CONDITION;
+            case "ACTION":
+            case "A":
+                return ACTION;
+            case "NAME":
+            case "N":
+                return NAME;
+            case "DESCRIPTION":
+            case "I":
+                return DESCRIPTION;
+            default:
+                return null;
+        }
+    }
+
+    private static String tableNameOf(SheetRows rows, int row) {
+        int col = firstValueColumn(rows, row);
+        if (col < 0 || rows.kind(row, col) != SheetRows.TEXT) {
+            return null;
+        }
+        String value = rows.text(row, col).trim();
+        if (!value.regionMatches(true, 0, RULE_TABLE, 0, RULE_TABLE.length())) {
+            return null;
+        }
+        String name = value.substring(RULE_TABLE.length()).trim();
+        return name.isEmpty() ? RULE_TABLE + " " + (rows.rowNum(row) + 1) : name;
+    }
+
+    private static int firstValueColumn(SheetRows rows, int row) {
+        for (int col = 0; col < rows.width(row); col++) {
+            if (!rows.isBlank(row, col)) {
+                return col;
+            }
+        }
+        return -1;
+    }
+
+    private static SheetRows readRows(InputStream sheetXml, SheetXmlDecoder.Lookups lookups) {
+        SheetRows rows = new SheetRows();
+        try {
+            XMLReader sheetParser = XMLHelper.newXMLReader();
+            sheetParser.setContentHandler(new SheetXmlDecoder(lookups, rows));
+            sheetParser.parse(new InputSource(sheetXml));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (SAXException | ParserConfigurationException | RuntimeException e) {
+            throw new UncheckedIOException(new IOException("Failed to read Excel file: " + e.getMessage(), e));
+        }
+        return rows;
+    }
+
+    /**
+     * Reads a sheet's XML as standalone documents, breaking only before a {@code <row>} that carries its
+     * own row number. Each piece after the first repeats the sheet's opening up to {@code <sheetData>},
+     * and every piece but the last is closed off after its last row. A sheet that cannot be cut safely is
+     * read as one piece.
+     */
+    static class SheetPieces {
+        private static final int MAX_BYTES = Integer.MAX_VALUE - 8;
+
+        private final InputStream in;
+        private final int splitBytes;
+        private byte[] buffer;
+        private int length;
+        private boolean end;
+        // The sheet's opening up to and including <sheetData>, once found
+        private byte[] opening;
+        private boolean first = true;
+        private boolean whole;
+        private int pieceBytes;
+
+        SheetPieces(InputStream in, int firstPieceBytes, int splitBytes) {
+            this.in = in;
+            this.splitBytes = splitBytes;
+            this.buffer = new byte[firstPieceBytes];
+            this.pieceBytes = firstPieceBytes;
+        }
+
+        /**
+         * The next piece, or null once the sheet has been read.
+         */
+        InputStream next() throws IOException {
+            while (true) {
+                if (length == 0 && end) {
+                    return null;
+                }
+                fill(pieceBytes);
+
+                int dataStart = first ? dataStart() : 0;
+                if (first && dataStart < 0 && !end) {
+                    pieceBytes = grow(pieceBytes);
+                    continue;
+                }
+                if (first && dataStart > 0 && opening == null) {
+                    opening = Arrays.copyOf(buffer, dataStart);
+                    whole = buffer[dataStart - 2] == '/' || indexOf(buffer, WORKSHEET, 0, dataStart) < 0;
+                }
+                if (end || dataStart < 0 || whole) {
+                    if (!end) {
+                        pieceBytes = MAX_BYTES;
+                        continue;
+                    }
+                    return take(length, false);
+                }
+
+                int cut = lastCut(dataStart);
+                if (cut < 0) {
+                    pieceBytes = grow(pieceBytes);
+                    continue;
+                }
+                pieceBytes = Math.min(pieceBytes * 2, splitBytes);
+                return take(cut, true);
+            }
+        }
+
+        private static int grow(int bytes) {
+            return (int) Math.min((long) bytes * 2, MAX_BYTES);
+        }
+
+        private void fill(int target) throws IOException {
+            while (!end && length < target) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, grow(buffer.length));
+                }
+                int read = in.read(buffer, length, Math.min(buffer.length, target) - length);
+                if (read < 0) {
+                    end = true;
+                } else {
+                    length += read;
+                }
+            }
+        }
+
+        private int dataStart() {
+            int dataTag = indexOf(buffer, SHEET_DATA, 0, length);
+            if (dataTag < 0) {
+                return -1;
+            }
+            int tagEnd = indexOf(buffer, TAG_END, dataTag, length);
+            return tagEnd < 0 ? -1 : tagEnd + 1;
+        }
+
+        /**
+         * The last row start in the buffer that leaves at least one whole row before it and carries a row
+         * number, or -1 when there is none yet.
+         */
+        private int lastCut(int dataStart) {
+            int firstRow = nextRowStart(buffer, dataStart, length);
+            int dataEnd = indexOf(buffer, SHEET_DATA_END, dataStart, length);
+            int limit = dataEnd < 0 ? length : dataEnd;
+            for (int at = lastRowStart(buffer, firstRow + 1, limit); at > firstRow;
+                    at = lastRowStart(buffer, firstRow + 1, at)) {
+                int tagEnd = indexOf(buffer, TAG_END, at, limit);
+                if (tagEnd >= 0 && indexOf(buffer, ROW_NUMBER, at, tagEnd) >= 0) {
+                    return at;
+                }
+            }
+            return -1;
+        }
+
+        private InputStream take(int to, boolean close) {
+            List<InputStream> parts = new ArrayList<>();
+            if (!first) {
+                parts.add(new ByteArrayInputStream(opening));
+            }
+            parts.add(new ByteArrayInputStream(Arrays.copyOf(buffer, to)));
+            if (close) {
+                parts.add(new ByteArrayInputStream(CLOSE));
+            }
+
+            System.arraycopy(buffer, to, buffer, 0, length - to);
+            length -= to;
+            first = false;
+            return new SequenceInputStream(Collections.enumeration(parts));
+        }
+    }
+
+    private static int nextRowStart(byte[] xml, int from, int to) {
+        for (int at = indexOf(xml, ROW, from, to); at >= 0; at = indexOf(xml, ROW, at + 1, to)) {
+            if (isRowTag(xml, at, to)) {
+                return at;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The last row start at or after {@code from} and before {@code to}, or -1.
+     */
+    private static int lastRowStart(byte[] xml, int from, int to) {
+        for (int at = to - ROW.length; at >= from; at--) {
+            if (xml[at] == '<' && indexOf(xml, ROW, at, at + ROW.length) == at && isRowTag(xml, at, to)) {
+                return at;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isRowTag(byte[] xml, int at, int to) {
+        byte after = at + ROW.length < to ? xml[at + ROW.length] : 0;
+        return after == ' ' || after == '>' || after == '\t' || after == '\r' || after == '\n';
+    }
+
+    private static int indexOf(byte[] bytes, byte[] target, int from, int to) {
+        outer:
+        for (int i = from; i <= to - target.length; i++) {
+            for (int j = 0; j < target.length; j++) {
+                if (bytes[i + j] != target[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static <T> T join(ForkJoinTask<T> task) throws IOException {
+        try {
+            return task.join();
+        } catch (RuntimeException e) {
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.rulemanagement.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.NOT_FOUND)
+public class WorkspaceNotFoundException extends RuntimeException {
+
+    public WorkspaceNotFoundException(String workspaceId) {
+        super("Workspace " + workspaceId + " not found. Please fetch rules from Git again.");
+    }
+}
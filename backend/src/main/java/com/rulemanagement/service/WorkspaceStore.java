@@ -0,0 +1,451 @@
+package com.rulemanagement.service;
+
+import com.rulemanagement.model.GitRepository;
+import com.rulemanagement.model.Rule;
+import com.rulemanagement.model.RuleChange;
+import com.rulemanagement.model.RuleChange.ChangeType;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps every workspace on disk as a binary snapshot plus an append-only log of the edits made since,
+ * so a restart restores unsaved edits without going back to Git or parsing the workbook again. Both files
+ * are memory-mapped when read back. The log is folded into a new snapshot once it grows past a limit.
+ * Every snapshot carries a random generation that its log starts with, so a log left behind by an earlier
+ * snapshot is never replayed onto a later one.
+ */
+@Service
+public class WorkspaceStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(WorkspaceStore.class);
+
+    private static final int SNAPSHOT_MAGIC = 0x52575353;
+    // Rules and logged edits are written in the RuleCodec format of the same number, up to format 2;
+    // format 3 added the snapshot generation
+    private static final int SNAPSHOT_FORMAT = 3;
+    private static final int GENERATION_FORMAT = 3;
+    private static final int LOG_MAGIC = 0x5257534c;
+    private static final int LOG_HEADER_BYTES = 12;
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final String LOG_FILE = "edits.log";
+
+    @Value("${rule-management.workspaces.persist:true}")
+    private boolean enabled;
+
+    @Value("${rule-management.workspaces.store-dir:${java.io.tmpdir}/rule-management/workspaces}")
+    private String storeDir;
+
+    @Value("${rule-management.workspaces.compact-log-bytes:1048576}")
+    private long compactLogBytes;
+
+    @Autowired
+    private PipelineMetrics metrics;
+
+    private final Map<String, FileChannel> logs = new ConcurrentHashMap<>();
+
+    /**
+     * Reads back every stored workspace, least recently written first. Stores in an older format are
+     * rewritten in the current one; stores that cannot be read are left on disk and skipped.
+     */
+    public List<RuleWorkspace> loadAll() {
+        List<RuleWorkspace> restored = new ArrayList<>();
+        File[] dirs = enabled ? Paths.get(storeDir).toFile().listFiles(File::isDirectory) : null;
+        if (dirs == null) {
+            return restored;
+        }
+
+        Arrays.sort(dirs, Comparator.comparingLong(dir -> new File(dir, SNAPSHOT_FILE).lastModified()));
+        for (File dir : dirs) {
+            try {
+                Path snapshot = dir.toPath().resolve(SNAPSHOT_FILE);
+                SnapshotHeader header = readHeader(snapshot);
+                RuleWorkspace workspace = readSnapshot(snapshot, header.format);
+                replayLog(workspace, dir.toPath().resolve(LOG_FILE), header);
+                if (header.format < SNAPSHOT_FORMAT) {
+                    save(workspace);
+                } else {
+                    attach(workspace, header.generation);
+                }
+                restored.add(workspace);
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Skipping workspace store {} that cannot be read: {}", dir, e.toString());
+            }
+        }
+        return restored;
+    }
+
+    /**
+     * Writes a fresh snapshot of the workspace, empties its log and starts logging its edits. The old log
+     * is only removed once the new snapshot is in place, and is ignored from then on if that fails.
+     */
+    public void save(RuleWorkspace workspace) {
+        if (!enabled) {
+            return;
+        }
+
+        workspace.snapshotLock().lock();
+        try (PipelineMetrics.Stage stage = metrics.stage("workspace.snapshot")) {
+            closeLog(workspace.getId());
+            Path dir = workspaceDir(workspace.getId());
+            Files.createDirectories(dir);
+            long generation = ThreadLocalRandom.current().nextLong();
+            writeSnapshot(workspace, dir, generation);
+            Files.deleteIfExists(dir.resolve(LOG_FILE));
+            attach(workspace, generation);
+            stage.setBytes(Files.size(dir.resolve(SNAPSHOT_FILE)));
+            stage.setRows(workspace.size());
+            stage.succeeded();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not store workspace " + workspace.getId(), e);
+        } finally {
+            workspace.snapshotLock().unlock();
+        }
+    }
+
+    /**
+     * Folds the edit log into a new snapshot once the log is larger than the configured limit.
+     */
+    public void compactIfNeeded(RuleWorkspace workspace) {
+        FileChannel log = logs.get(workspace.getId());
+        try {
+            if (log != null && log.size() > compactLogBytes) {
+                save(workspace);
+            }
+        } catch (IOException e) {
+            // Compaction is retried after the next edit
+        }
+    }
+
+    /**
+     * Stops logging the workspace's edits. Waits for edits already being logged, so a workspace about to
+     * be replaced under the same id never writes to the log of the one replacing it.
+     */
+    public void detach(RuleWorkspace workspace) {
+        workspace.snapshotLock().lock();
+        try {
+            workspace.setEditListener(null);
+        } finally {
+            workspace.snapshotLock().unlock();
+        }
+    }
+
+    public void delete(RuleWorkspace workspace) {
+        detach(workspace);
+        closeLog(workspace.getId());
+        deleteStore(workspaceDir(workspace.getId()));
+    }
+
+    @PreDestroy
+    void closeLogs() {
+        for (String workspaceId : new ArrayList<>(logs.keySet())) {
+            closeLog(workspaceId);
+        }
+    }
+
+    private void attach(RuleWorkspace workspace, long generation) throws IOException {
+        FileChannel log = FileChannel.open(workspaceDir(workspace.getId()).resolve(LOG_FILE),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if (log.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_BYTES);
+            header.putInt(LOG_MAGIC);
+            header.putLong(generation);
+            header.flip();
+            while (header.hasRemaining()) {
+                log.write(header);
+            }
+        }
+        logs.put(workspace.getId(), log);
+        workspace.setEditListener((type, ruleId, ruleVersion, rule) -> appendEdit(log, type, ruleId, ruleVersion, rule));
+    }
+
+    private void closeLog(String workspaceId) {
+        FileChannel log = logs.remove(workspaceId);
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                // Nothing left to flush
+            }
+        }
+    }
+
+    private void writeSnapshot(RuleWorkspace workspace, Path dir, long generation) throws IOException {
+        Path partial = Files.createTempFile(dir, "snapshot", ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(partial)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_FORMAT);
+            out.writeLong(generation);
+            RuleCodec.writeString(out, workspace.getId());
+
+            GitRepository gitRepo = workspace.getGitRepo();
+            out.writeBoolean(gitRepo != null);
+            if (gitRepo != null) {
+                // Tokens are never written to disk; saving after a restart takes them from the request
+                RuleCodec.writeString(out, gitRepo.getUrl());
+                RuleCodec.writeString(out, gitRepo.getBranch());
+                RuleCodec.writeString(out, gitRepo.getFilePath());
+                RuleCodec.writeString(out, gitRepo.getUsername());
+            }
+
+            RuleTemplate template = workspace.getTemplate();
+            out.writeBoolean(template != null);
+            if (template != null) {
+                RuleCodec.writeString(out, template.getFilePath());
+                RuleCodec.writeString(out, template.getCommitId());
+                RuleCodec.writeString(out, template.getBlobId());
+                out.writeInt(template.getContent().length);
+                out.write(template.getContent());
+            }
+
+            out.writeLong(workspace.getNextId());
+            out.writeLong(workspace.getRulesVersion());
+
+            List<Rule> rules = workspace.getAllRules();
+            out.writeInt(rules.size());
+            for (Rule rule : rules) {
+                RuleCodec.writeRule(out, rule);
+            }
+
+            Map<Long, Integer> sourceRows = workspace.getSourceRows();
+            out.writeInt(sourceRows.size());
+            for (Map.Entry<Long, Integer> sourceRow : sourceRows.entrySet()) {
+                out.writeLong(sourceRow.getKey());
+                out.writeInt(sourceRow.getValue());
+            }
+
+            List<RuleChange> changes = workspace.getPendingChanges();
+            out.writeInt(changes.size());
+            for (RuleChange change : changes) {
+                out.writeLong(change.getRuleId());
+                out.writeByte(change.getType().ordinal());
+                out.writeLong(change.getVersion());
+            }
+        }
+        Files.move(partial, dir.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private SnapshotHeader readHeader(Path snapshot) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(snapshot))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a workspace snapshot");
+            }
+            int format = in.readInt();
+            if (format < 1 || format > SNAPSHOT_FORMAT) {
+                throw new IOException("Workspace snapshot written by an incompatible version");
+            }
+            return new SnapshotHeader(format, format >= GENERATION_FORMAT ? in.readLong() : 0);
+        }
+    }
+
+    private RuleWorkspace readSnapshot(Path snapshot, int format) throws IOException {
+        try (DataInputStream in = new DataInputStream(new MappedInputStream(map(snapshot)))) {
+            in.skipBytes(format >= GENERATION_FORMAT ? 16 : 8);
+            String id = RuleCodec.readString(in);
+
+            GitRepository gitRepo = null;
+            if (in.readBoolean()) {
+                gitRepo = new GitRepository();
+                gitRepo.setUrl(RuleCodec.readString(in));
+                gitRepo.setBranch(RuleCodec.readString(in));
+                gitRepo.setFilePath(RuleCodec.readString(in));
+                gitRepo.setUsername(RuleCodec.readString(in));
+            }
+
+            RuleTemplate template = null;
+            if (in.readBoolean()) {
+                String filePath = RuleCodec.readString(in);
+                String commitId = RuleCodec.readString(in);
+                String blobId = RuleCodec.readString(in);
+                byte[] content = new byte[in.readInt()];
+                in.readFully(content);
+                template = new RuleTemplate(filePath, content, commitId, blobId);
+            }
+
+            long nextId = in.readLong();
+            long rulesVersion = in.readLong();
+
+            List<Rule> rules = RuleCodec.readRules(in, codecFormat(format));
+
+            int sourceRowCount = in.readInt();
+            Map<Long, Integer> sourceRows = new HashMap<>(sourceRowCount * 2);
+            for (int i = 0; i < sourceRowCount; i++) {
+                sourceRows.put(in.readLong(), in.readInt());
+            }
+
+            int changeCount = in.readInt();
+            List<RuleChange> changes = new ArrayList<>(changeCount);
+            for (int i = 0; i < changeCount; i++) {
+                changes.add(new RuleChange(in.readLong(), ChangeType.values()[in.readByte()], in.readLong()));
+            }
+
+            RuleWorkspace workspace = new RuleWorkspace(id, gitRepo, template, rules);
+            workspace.restore(sourceRows, changes, nextId, rulesVersion);
+            return workspace;
+        }
+    }
+
+    /**
+     * The log starts with the generation of the snapshot it belongs to. Log records are a length, a CRC32
+     * of the payload and the payload. Replay stops at the first record that is cut short or does not match
+     * its checksum, and the log is truncated there.
+     */
+    private void appendEdit(FileChannel log, ChangeType type, Long ruleId, long ruleVersion, Rule rule) {
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream(128);
+            try (DataOutputStream out = new DataOutputStream(payload)) {
+                out.writeByte(type.ordinal());
+                out.writeLong(ruleId);
+                out.writeLong(ruleVersion);
+                if (type != ChangeType.DELETED) {
+                    RuleCodec.writeRule(out, rule);
+                }
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(payload.toByteArray());
+            ByteBuffer record = ByteBuffer.allocate(12 + payload.size());
+            record.putInt(payload.size());
+            record.putLong(crc.getValue());
+            record.put(payload.toByteArray());
+            record.flip();
+            while (record.hasRemaining()) {
+                log.write(record);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not log edit to rule " + ruleId, e);
+        }
+    }
+
+    private void replayLog(RuleWorkspace workspace, Path logFile, SnapshotHeader header) throws IOException {
+        if (!Files.exists(logFile)) {
+            return;
+        }
+
+        ByteBuffer log = map(logFile);
+        if (header.format >= GENERATION_FORMAT) {
+            if (log.remaining() < LOG_HEADER_BYTES || log.getInt() != LOG_MAGIC || log.getLong() != header.generation) {
+                // Left by an earlier snapshot when a save stopped before removing it, or cut short while created
+                logger.info("Discarding edit log {} that does not belong to the stored snapshot", logFile);
+                Files.delete(logFile);
+                return;
+            }
+        }
+        Map<Long, Long> deletedVersions = new HashMap<>();
+        int validEnd = log.position();
+        while (log.remaining() >= 12) {
+            int length = log.getInt();
+            long checksum = log.getLong();
+            if (length < 0 || length > log.remaining()) {
+                break;
+            }
+
+            byte[] payload = new byte[length];
+            log.get(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if (crc.getValue() != checksum) {
+                break;
+            }
+
+            try (DataInputStream in = new DataInputStream(new MappedInputStream(ByteBuffer.wrap(payload)))) {
+                ChangeType type = ChangeType.values()[in.readByte()];
+                long ruleId = in.readLong();
+                long ruleVersion = in.readLong();
+                Rule rule = type != ChangeType.DELETED ? RuleCodec.readRule(in, codecFormat(header.format)) : null;
+                workspace.replayEdit(type, ruleId, ruleVersion, rule, deletedVersions);
+            }
+            validEnd = log.position();
+        }
+
+        if (validEnd < log.limit()) {
+            try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.WRITE)) {
+                channel.truncate(validEnd);
+            }
+        }
+    }
+
+    /**
+     * The RuleCodec format rules were written in by a snapshot format.
+     */
+    private static int codecFormat(int snapshotFormat) {
+        return Math.min(snapshotFormat, RuleCodec.FORMAT_VERSION);
+    }
+
+    private ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private Path workspaceDir(String workspaceId) {
+        return Paths.get(storeDir, workspaceId);
+    }
+
+    private void deleteStore(Path dir) {
+        File[] files = dir.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.toFile().delete();
+    }
+
+    private static class SnapshotHeader {
+        private final int format;
+        // Zero for formats written before generations
+        private final long generation;
+
+        SnapshotHeader(int format, long generation) {
+            this.format = format;
+            this.generation = generation;
+        }
+    }
+
+    private static class MappedInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        MappedInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.rulemanagement.service;
+
+import com.rulemanagement.model.Rule;
+import com.rulemanagement.model.RulePage;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RuleWorkspaceTest {
+
+    private static final int STEADY_RULES = 200;
+    private static final int EDITORS = 4;
+    private static final int RULES_PER_EDITOR = 50;
+    private static final int ROUNDS = 40;
+    private static final int SEARCHERS = 2;
+
+    @Test
+    void searchesDuringConcurrentEditsSeeOnlyMatchingRulesAndMissNoUntouchedOnes() throws Exception {
+        List<Rule> fetched = new ArrayList<>();
+        for (long id = 1; id <= STEADY_RULES + EDITORS * RULES_PER_EDITOR; id++) {
+            fetched.add(new Rule(id, id <= STEADY_RULES ? "Steady " + id : "Alpha " + id, null));
+        }
+        RuleWorkspace workspace = new RuleWorkspace("workspace", null, null, fetched);
+
+        ExecutorService pool = Executors.newFixedThreadPool(EDITORS + SEARCHERS);
+        CountDownLatch editing = new CountDownLatch(EDITORS);
+        List<Future<?>> done = new ArrayList<>();
+        for (int e = 0; e < EDITORS; e++) {
+            long first = STEADY_RULES + 1 + (long) e * RULES_PER_EDITOR;
+            done.add(pool.submit(() -> {
+                try {
+                    for (int round = 0; round < ROUNDS; round++) {
+                        String name = round % 2 == 0 ? "Beta " : "Alpha ";
+                        for (long id = first; id < first + RULES_PER_EDITOR; id++) {
+                            workspace.updateRule(id, new Rule(null, name + id, null), null);
+                        }
+                        Rule created = workspace.createRule(new Rule(null, "Alpha created", null));
+                        if (round % 2 == 0) {
+                            workspace.deleteRule(created.getId(), null);
+                        }
+                    }
+                } finally {
+                    editing.countDown();
+                }
+                return null;
+            }));
+        }
+        for (int s = 0; s < SEARCHERS; s++) {
+            done.add(pool.submit(() -> {
+                do {
+                    assertEquals(STEADY_RULES, search(workspace, "steady").size());
+                    for (Rule rule : search(workspace, "alpha")) {
+                        assertTrue(rule.getName().startsWith("Alpha "), rule.getName());
+                    }
+                } while (editing.getCount() > 0);
+                return null;
+            }));
+        }
+        for (Future<?> future : done) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        for (String word : List.of("steady", "alpha", "beta", "created")) {
+            Set<Long> expected = workspace.getAllRules().stream()
+                .filter(rule -> rule.getName().toLowerCase(Locale.ROOT).contains(word))
+                .map(Rule::getId)
+                .collect(Collectors.toSet());
+            Set<Long> found = search(workspace, word).stream().map(Rule::getId).collect(Collectors.toSet());
+            assertEquals(expected, found, word);
+        }
+        assertEquals(EDITORS * ROUNDS / 2, search(workspace, "created").size());
+        assertEquals(STEADY_RULES + EDITORS * (RULES_PER_EDITOR + ROUNDS / 2), workspace.size());
+    }
+
+    private static List<Rule> search(RuleWorkspace workspace, String text) {
+        List<Rule> found = new ArrayList<>();
+        String cursor = null;
+        do {
+            RulePage page = workspace.searchRules(text, 64, cursor);
+            found.addAll(page.getItems());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return found;
+    }
+}
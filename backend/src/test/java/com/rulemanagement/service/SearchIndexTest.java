@@ -0,0 +1,88 @@
+package com.rulemanagement.service;
+
+import com.rulemanagement.model.Rule;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchIndexTest {
+
+    private static final int THREADS = 8;
+    private static final int RULES_PER_THREAD = 500;
+    private static final int ROUNDS = 20;
+
+    @Test
+    void concurrentAddsAndRemovesKeepPostingsAndSizesInStep() throws Exception {
+        SearchIndex index = new SearchIndex();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CyclicBarrier start = new CyclicBarrier(THREADS);
+        List<Future<?>> done = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            long first = (long) t * RULES_PER_THREAD;
+            done.add(pool.submit(() -> {
+                start.await();
+                for (int round = 0; round < ROUNDS; round++) {
+                    for (long id = first; id < first + RULES_PER_THREAD; id++) {
+                        index.add(id, rule(id));
+                    }
+                    // Every round but the last takes all of them out again; the last keeps the odd ids
+                    for (long id = first; id < first + RULES_PER_THREAD; id++) {
+                        if (round < ROUNDS - 1 || id % 2 == 0) {
+                            index.remove(id, rule(id));
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : done) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+        pool.shutdown();
+
+        NavigableSet<Long> odd = new TreeSet<>();
+        for (long id = 1; id < (long) THREADS * RULES_PER_THREAD; id += 2) {
+            odd.add(id);
+        }
+        RuleIndex.Postings shared = index.postings("shared");
+        assertNotNull(shared);
+        assertEquals(odd, shared.ids);
+        assertEquals(odd.size(), shared.size());
+        assertEquals(new ArrayList<>(odd), idsOf(index.candidates(List.of("sha"), Long.MIN_VALUE, Integer.MAX_VALUE)));
+
+        for (long id = 0; id < (long) THREADS * RULES_PER_THREAD; id++) {
+            RuleIndex.Postings own = index.postings("r" + id);
+            if (id % 2 == 0) {
+                assertNull(own, "r" + id);
+            } else {
+                assertEquals(Set.of(id), own.ids);
+                assertEquals(1, own.size());
+            }
+        }
+    }
+
+    @Test
+    void candidatesMergePrefixMatchesInIdOrder() {
+        SearchIndex index = new SearchIndex();
+        index.add(3L, new Rule(3L, "Gold discount", null));
+        index.add(1L, new Rule(1L, "Golden ticket", null));
+        index.add(2L, new Rule(2L, "Silver discount", null));
+
+        assertEquals(List.of(1L, 3L), idsOf(index.candidates(List.of("gold"), Long.MIN_VALUE, Integer.MAX_VALUE)));
+        assertEquals(List.of(3L), idsOf(index.candidates(List.of("gold"), 1L, Integer.MAX_VALUE)));
+        assertEquals(List.of(), idsOf(index.candidates(List.of("bronze"), Long.MIN_VALUE, Integer.MAX_VALUE)));
+    }
+
+    private static Rule rule(long id) {
+        return new Rule(id, "Shared rule r" + id, null);
+    }
+
+    private static List<Long> idsOf(Iterator<Long> ids) {
+        List<Long> list = new ArrayList<>();
+        ids.forEachRemaining(list::add);
+        return list;
+    }
+}
@@ -0,0 +1,165 @@
+package com.rulemanagement.service;
+
+import com.rulemanagement.model.Rule;
+import org.apache.poi.xssf.model.StylesTable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkbookParserTest {
+
+    private static final String SHEET_START = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+        + "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>";
+    private static final String SHEET_END = "</sheetData></worksheet>";
+
+    private final ForkJoinPool pool = new ForkJoinPool(2);
+
+    @AfterEach
+    void shutDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void sheetsCutIntoSmallPiecesReadTheSameRulesAsWholeSheets() throws IOException {
+        StringBuilder first = new StringBuilder(SHEET_START);
+        first.append(row(1, text("A", 1, "Rule Name") + text("B", 1, "Condition Age")
+            + text("C", 1, "Action Discount") + text("D", 1, "Description")));
+        for (int r = 2; r <= 400; r++) {
+            // Some rows leave cells out, and some have no row number of their own
+            String cells = text("A", r, "Rule " + r) + number("B", r, r * 0.5)
+                + (r % 7 == 0 ? "" : number("C", r, r % 13)) + (r % 5 == 0 ? text("D", r, "Every fifth") : "");
+            first.append(r % 11 == 0 ? "<row>" + cells + "</row>" : row(r, cells));
+        }
+        first.append(SHEET_END);
+
+        StringBuilder tables = new StringBuilder(SHEET_START);
+        int r = 1;
+        for (int block = 0; block < 3; block++) {
+            tables.append(row(r, text("B", r, "RuleTable Block " + block)));
+            tables.append(row(r + 1, text("B", r + 1, "NAME") + text("C", r + 1, "CONDITION")
+                + text("D", r + 1, "ACTION")));
+            tables.append(row(r + 2, text("C", r + 2, "Person") + text("D", r + 2, "")));
+            tables.append(row(r + 3, text("C", r + 3, "age > $param") + text("D", r + 3, "setRate($param)")));
+            tables.append(row(r + 4, text("B", r + 4, "Name") + text("C", r + 4, "Minimum age")
+                + text("D", r + 4, "Rate")));
+            for (int i = 0; i < 100 + block * 50; i++) {
+                int at = r + 5 + i;
+                tables.append(row(at, text("B", at, i % 3 == 0 ? "" : "Rule " + block + "-" + i)
+                    + number("C", at, 18 + i) + number("D", at, i * 0.25)));
+            }
+            r += 5 + 100 + block * 50 + 2;
+        }
+        tables.append(SHEET_END);
+
+        List<String> whole = describe(parse(new WorkbookParser(pool), first, tables));
+        assertEquals(399 + 100 + 150 + 200, whole.size());
+        assertTrue(pieces(tables.toString(), 128, 256) > 100);
+        for (int firstPieceBytes : new int[] {128, 700, 3000}) {
+            assertEquals(whole, describe(parse(new WorkbookParser(pool, firstPieceBytes, firstPieceBytes * 2),
+                first, tables)), "first pieces of " + firstPieceBytes + " bytes");
+        }
+    }
+
+    @Test
+    void cellsSharingAFormulaReadItMovedToTheirOwnRow() throws IOException {
+        StringBuilder xml = new StringBuilder(SHEET_START);
+        xml.append(row(1, text("A", 1, "Rule Name") + text("B", 1, "Condition Total")));
+        for (int r = 2; r <= 200; r++) {
+            String formula = r == 2 ?
+                "<f t=\"shared\" ref=\"B2:B200\" si=\"0\">SUM($A$1:A2)*C2+'Other Sheet'!D$2&amp;\"A1\"</f>" :
+                "<f t=\"shared\" si=\"0\"/>";
+            xml.append(row(r, text("A", r, "R" + r) + "<c r=\"B" + r + "\">" + formula + "<v>" + r + "</v></c>"));
+        }
+        xml.append(SHEET_END);
+
+        // Pieces of a few rows each leave most cells in a different piece from the master cell
+        for (WorkbookParser parser : List.of(new WorkbookParser(pool), new WorkbookParser(pool, 256, 512))) {
+            List<Rule> rules = parse(parser, xml.toString());
+
+            assertEquals(199, rules.size());
+            for (Rule rule : rules) {
+                int r = rule.getSourceRow() + 1;
+                assertEquals("SUM($A$1:A" + r + ")*C" + r + "+'Other Sheet'!D$2&\"A1\"",
+                    rule.getConditions().get("Condition Total"));
+            }
+        }
+    }
+
+    @Test
+    void cellsWhoseSharedFormulaIsMissingKeepTheirCachedValue() throws IOException {
+        String xml = SHEET_START
+            + row(1, text("A", 1, "Rule Name") + text("B", 1, "Condition Total"))
+            + row(2, text("A", 2, "R2") + "<c r=\"B2\" t=\"str\"><f t=\"shared\" si=\"3\"/><v>cached</v></c>")
+            + SHEET_END;
+
+        List<Rule> rules = parse(new WorkbookParser(pool), xml);
+
+        assertEquals("cached", rules.get(0).getConditions().get("Condition Total"));
+    }
+
+    @Test
+    void referencesMovedOffTheSheetBecomeRefErrors() {
+        SheetXmlDecoder.SharedFormula formula = new SheetXmlDecoder.SharedFormula("A2+B$1+$C3+SUM(D:D)", 1, 1);
+
+        assertEquals("#REF!+A$1+$C2+SUM(C:C)", formula.at(0, 0));
+        assertEquals("B3+C$1+$C4+SUM(E:E)", formula.at(2, 2));
+    }
+
+    private List<Rule> parse(WorkbookParser parser, String xml) throws IOException {
+        List<Rule> rules = new ArrayList<>();
+        parser.parse(List.of(WorkbookParser.SheetSource.xml("Rules", stream(xml))).iterator(),
+            SheetXmlDecoder.Lookups.of(null, null), rules::add);
+        return rules;
+    }
+
+    private List<Rule> parse(WorkbookParser parser, CharSequence firstSheet, CharSequence tableSheet)
+            throws IOException {
+        List<Rule> rules = new ArrayList<>();
+        parser.parse(List.of(WorkbookParser.SheetSource.xml("Rules", stream(firstSheet)),
+                WorkbookParser.SheetSource.xml("Tables", stream(tableSheet))).iterator(),
+            SheetXmlDecoder.Lookups.of(new StylesTable(), null), rules::add);
+        return rules;
+    }
+
+    private static int pieces(String xml, int firstPieceBytes, int splitBytes) throws IOException {
+        WorkbookParser.SheetPieces pieces = new WorkbookParser.SheetPieces(stream(xml), firstPieceBytes, splitBytes);
+        int count = 0;
+        while (pieces.next() != null) {
+            count++;
+        }
+        return count;
+    }
+
+    private static List<String> describe(List<Rule> rules) {
+        List<String> described = new ArrayList<>();
+        for (Rule rule : rules) {
+            described.add(rule.getId() + "|" + rule.getName() + "|" + rule.getDescription() + "|" + rule.getSheet()
+                + "|" + rule.getTable() + "|" + rule.getSourceRow() + "|" + new TreeMap<>(rule.getConditions())
+                + "|" + new TreeMap<>(rule.getActions()));
+        }
+        return described;
+    }
+
+    private static ByteArrayInputStream stream(CharSequence xml) {
+        return new ByteArrayInputStream(xml.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String row(int r, String cells) {
+        return "<row r=\"" + r + "\">" + cells + "</row>";
+    }
+
+    private static String number(String column, int r, double value) {
+        return "<c r=\"" + column + r + "\"><v>" + value + "</v></c>";
+    }
+
+    private static String text(String column, int r, String value) {
+        return "<c r=\"" + column + r + "\" t=\"inlineStr\"><is><t>" + value + "</t></is></c>";
+    }
+}
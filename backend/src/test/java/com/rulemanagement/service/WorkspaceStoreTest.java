@@ -0,0 +1,157 @@
+package com.rulemanagement.service;
+
+import com.rulemanagement.model.Rule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkspaceStoreTest {
+
+    private static final String WORKSPACE_ID = "workspace";
+
+    @TempDir
+    Path storeDir;
+
+    @Test
+    void restoresEditsLoggedSinceTheSnapshot() {
+        WorkspaceStore store = newStore();
+        RuleWorkspace workspace = fetched();
+        store.save(workspace);
+        workspace.updateRule(1L, new Rule(null, "Edited", null), 1L);
+        workspace.deleteRule(2L, 1L);
+        store.closeLogs();
+
+        RuleWorkspace restored = single(newStore().loadAll());
+        assertEquals("Edited", restored.getRule(1L).getName());
+        assertEquals(2, restored.getRule(1L).getVersion());
+        assertNull(restored.getRule(2L));
+    }
+
+    @Test
+    void ignoresALogLeftBehindByAnEarlierSnapshot() throws Exception {
+        WorkspaceStore store = newStore();
+        RuleWorkspace workspace = fetched();
+        store.save(workspace);
+        workspace.updateRule(1L, new Rule(null, "Edited", null), 1L);
+        Path log = storeDir.resolve(WORKSPACE_ID).resolve("edits.log");
+        Path staleLog = storeDir.resolve("stale.log");
+        Files.copy(log, staleLog);
+
+        // A refetch replaces the workspace; the save stops before the old log is removed
+        RuleWorkspace refetched = fetched();
+        store.detach(workspace);
+        store.save(refetched);
+        store.closeLogs();
+        Files.move(staleLog, log, StandardCopyOption.REPLACE_EXISTING);
+
+        RuleWorkspace restored = single(newStore().loadAll());
+        assertEquals("First", restored.getRule(1L).getName());
+        assertEquals(1, restored.getRule(1L).getVersion());
+        assertFalse(restored.hasPendingChanges());
+    }
+
+    @Test
+    void detachedWorkspaceKeepsEditingWithoutLogging() {
+        WorkspaceStore store = newStore();
+        RuleWorkspace workspace = fetched();
+        store.save(workspace);
+        store.detach(workspace);
+
+        RuleWorkspace refetched = fetched();
+        store.save(refetched);
+        workspace.updateRule(1L, new Rule(null, "Lost", null), 1L);
+        store.closeLogs();
+
+        assertEquals("First", single(newStore().loadAll()).getRule(1L).getName());
+    }
+
+    @Test
+    void replayStopsAtARecordCutShortAndLogsOnFromThere() throws Exception {
+        WorkspaceStore store = newStore();
+        RuleWorkspace workspace = fetched();
+        store.save(workspace);
+        workspace.updateRule(1L, new Rule(null, "Kept", null), 1L);
+        workspace.updateRule(2L, new Rule(null, "Cut", null), 1L);
+        store.closeLogs();
+        try (FileChannel log = FileChannel.open(logFile(), StandardOpenOption.WRITE)) {
+            log.truncate(log.size() - 3);
+        }
+
+        assertReplayedUpToTheDamage();
+    }
+
+    @Test
+    void replayStopsAtARecordThatFailsItsChecksum() throws Exception {
+        WorkspaceStore store = newStore();
+        RuleWorkspace workspace = fetched();
+        store.save(workspace);
+        workspace.updateRule(1L, new Rule(null, "Kept", null), 1L);
+        workspace.updateRule(2L, new Rule(null, "Corrupt", null), 1L);
+        workspace.updateRule(1L, new Rule(null, "After the damage", null), 2L);
+        store.closeLogs();
+
+        // Flip the first payload byte of the second record, past the log header and the first record
+        ByteBuffer log = ByteBuffer.wrap(Files.readAllBytes(logFile()));
+        int secondRecord = 12 + 12 + log.getInt(12);
+        log.put(secondRecord + 12, (byte) (log.get(secondRecord + 12) ^ 0x40));
+        Files.write(logFile(), log.array());
+
+        assertReplayedUpToTheDamage();
+    }
+
+    /**
+     * Restores the store after its log was damaged in the record updating rule 2, then checks that edits
+     * logged from there on are restored too.
+     */
+    private void assertReplayedUpToTheDamage() {
+        WorkspaceStore reopened = newStore();
+        RuleWorkspace restored = single(reopened.loadAll());
+        assertEquals("Kept", restored.getRule(1L).getName());
+        assertEquals(2, restored.getRule(1L).getVersion());
+        assertEquals("Second", restored.getRule(2L).getName());
+
+        restored.updateRule(2L, new Rule(null, "Logged after replay", null), 1L);
+        reopened.closeLogs();
+
+        RuleWorkspace again = single(newStore().loadAll());
+        assertEquals("Kept", again.getRule(1L).getName());
+        assertEquals("Logged after replay", again.getRule(2L).getName());
+        assertEquals(2, again.getRule(2L).getVersion());
+    }
+
+    private Path logFile() {
+        return storeDir.resolve(WORKSPACE_ID).resolve("edits.log");
+    }
+
+    private WorkspaceStore newStore() {
+        PipelineMetrics metrics = new PipelineMetrics();
+        ReflectionTestUtils.setField(metrics, "registry", new SimpleMeterRegistry());
+        WorkspaceStore store = new WorkspaceStore();
+        ReflectionTestUtils.setField(store, "enabled", true);
+        ReflectionTestUtils.setField(store, "storeDir", storeDir.toString());
+        ReflectionTestUtils.setField(store, "compactLogBytes", Long.MAX_VALUE);
+        ReflectionTestUtils.setField(store, "metrics", metrics);
+        return store;
+    }
+
+    private static RuleWorkspace fetched() {
+        return new RuleWorkspace(WORKSPACE_ID, null, null,
+            List.of(new Rule(1L, "First", null), new Rule(2L, "Second", null)));
+    }
+
+    private static RuleWorkspace single(List<RuleWorkspace> workspaces) {
+        assertEquals(1, workspaces.size());
+        return workspaces.get(0);
+    }
+}
@@ -1,7 +1,7 @@
 import { Component, OnInit } from '@angular/core';
 import { CommonModule } from '@angular/common';
 import { RuleService } from '../../services/rule.service';
-import { Rule, GitRepository } from '../../models/rule.model';
+import { Rule, RulePage, GitRepository } from '../../models/rule.model';
 
 @Component({
   selector: 'app-rule-list',
@@ -12,6 +12,9 @@ import { Rule, GitRepository } from '../../models/rule.model';
 })
 export class RuleListComponent implements OnInit {
   rules: Rule[] = [];
+  nextCursor: string | null = null;
+  pageSize = 200;
+  searchText = '';
   loading = false;
   error = '';
   selectedRule: Rule | null = null;
@@ -28,9 +31,10 @@ export class RuleListComponent implements OnInit {
     this.loading = true;
     this.error = '';
 
-    this.ruleService.getAllRules().subscribe({
-      next: (rules: Rule[]) => {
-        this.rules = rules;
+    this.fetchPage().subscribe({
+      next: (page: RulePage) => {
+        this.rules = page.items;
+        this.nextCursor = page.nextCursor;
         this.loading = false;
       },
       error: (err) => {
@@ -40,6 +44,31 @@ export class RuleListComponent implements OnInit {
     });
   }
 
+  loadMore() {
+    if (!this.nextCursor) return;
+
+    this.fetchPage(this.nextCursor).subscribe({
+      next: (page: RulePage) => {
+        this.rules = this.rules.concat(page.items);
+        this.nextCursor = page.nextCursor;
+      },
+      error: (err) => {
+        this.error = 'Failed to load rules: ' + (err.error || err.message);
+      }
+    });
+  }
+
+  search(text: string) {
+    this.searchText = text.trim();
+    this.loadRules();
+  }
+
+  private fetchPage(cursor?: string) {
+    return this.searchText
+      ? this.ruleService.searchRules(this.searchText, this.pageSize, cursor)
+      : this.ruleService.getRulesPage({ limit: this.pageSize, cursor });
+  }
+
   selectRule(rule: Rule) {
     this.selectedRule = rule;
   }
@@ -5,6 +5,23 @@ export interface Rule {
   actions: { [key: string]: any };
   description?: string;
   active: boolean;
+  version?: number;
+  sheet?: string;
+  table?: string;
+}
+
+export interface RulePage {
+  items: Rule[];
+  nextCursor: string | null;
+}
+
+export interface RuleQuery {
+  limit?: number;
+  cursor?: string;
+  sort?: 'id' | 'name';
+  order?: 'asc' | 'desc';
+  name?: string;
+  active?: boolean;
 }
 
 export interface GitRepository {
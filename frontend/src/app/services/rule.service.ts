@@ -1,7 +1,7 @@
 import { Injectable } from '@angular/core';
-import { HttpClient } from '@angular/common/http';
-import { Observable } from 'rxjs';
-import { Rule, GitRepository, PullRequestRequest, ValidationResult, SaveToGitResponse, CreatePRResponse } from '../models/rule.model';
+import { HttpClient, HttpHeaders, HttpParams } from '@angular/common/http';
+import { Observable, map } from 'rxjs';
+import { Rule, RulePage, RuleQuery, GitRepository, PullRequestRequest, ValidationResult, SaveToGitResponse, CreatePRResponse } from '../models/rule.model';
 import { environment } from '../../environments/environment';
 
 @Injectable({
@@ -9,35 +9,63 @@ import { environment } from '../../environments/environment';
 })
 export class RuleService {
   private apiUrl = environment.apiUrl + '/api/rules';
+  private workspaceId: string | null = null;
 
   constructor(private http: HttpClient) {}
 
+  private get options() {
+    return this.workspaceId ? { headers: new HttpHeaders({ 'X-Workspace-Id': this.workspaceId }) } : {};
+  }
+
   fetchRulesFromGit(gitRepo: GitRepository): Observable<Rule[]> {
-    return this.http.post<Rule[]>(`${this.apiUrl}/fetch`, gitRepo);
+    return this.http.post<Rule[]>(`${this.apiUrl}/fetch`, gitRepo, { observe: 'response' }).pipe(
+      map(response => {
+        this.workspaceId = response.headers.get('X-Workspace-Id');
+        return response.body ?? [];
+      })
+    );
   }
 
   getAllRules(): Observable<Rule[]> {
-    return this.http.get<Rule[]>(this.apiUrl);
+    return this.http.get<Rule[]>(this.apiUrl, this.options);
+  }
+
+  getRulesPage(query: RuleQuery): Observable<RulePage> {
+    let params = new HttpParams();
+    Object.entries(query).forEach(([key, value]) => {
+      if (value !== undefined && value !== null) {
+        params = params.set(key, String(value));
+      }
+    });
+    return this.http.get<RulePage>(this.apiUrl, { ...this.options, params });
+  }
+
+  searchRules(text: string, limit: number, cursor?: string): Observable<RulePage> {
+    let params = new HttpParams().set('q', text).set('limit', String(limit));
+    if (cursor) {
+      params = params.set('cursor', cursor);
+    }
+    return this.http.get<RulePage>(`${this.apiUrl}/search`, { ...this.options, params });
   }
 
   getRuleById(id: number): Observable<Rule> {
-    return this.http.get<Rule>(`${this.apiUrl}/${id}`);
+    return this.http.get<Rule>(`${this.apiUrl}/${id}`, this.options);
   }
 
   createRule(rule: Rule): Observable<Rule> {
-    return this.http.post<Rule>(this.apiUrl, rule);
+    return this.http.post<Rule>(this.apiUrl, rule, this.options);
   }
 
   updateRule(id: number, rule: Rule): Observable<Rule> {
-    return this.http.put<Rule>(`${this.apiUrl}/${id}`, rule);
+    return this.http.put<Rule>(`${this.apiUrl}/${id}`, rule, this.options);
   }
 
   deleteRule(id: number): Observable<void> {
-    return this.http.delete<void>(`${this.apiUrl}/${id}`);
+    return this.http.delete<void>(`${this.apiUrl}/${id}`, this.options);
   }
 
   saveRulesToGit(request: PullRequestRequest): Observable<SaveToGitResponse> {
-    return this.http.post<SaveToGitResponse>(`${this.apiUrl}/save-to-git`, request);
+    return this.http.post<SaveToGitResponse>(`${this.apiUrl}/save-to-git`, request, this.options);
   }
 
   createPullRequest(request: PullRequestRequest): Observable<CreatePRResponse> {
@@ -45,6 +73,6 @@ export class RuleService {
   }
 
   validateRules(): Observable<ValidationResult> {
-    return this.http.post<ValidationResult>(`${this.apiUrl}/validate`, {});
+    return this.http.post<ValidationResult>(`${this.apiUrl}/validate`, {}, this.options);
   }
 }